@@ -0,0 +1,70 @@
+package de.karstenbecker.daikin;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Compares decoding a poll response through a Gson tree, as pollItem used to do, with the streaming
+ * {@link ResponseDecoder}. Run with {@code ./gradlew jmh}, add {@code -prof gc} to the jmh args to see allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseDecoderBenchmark {
+
+  @Param({ "temperature", "consumption" })
+  public String response;
+
+  private String message;
+
+  @org.openjdk.jmh.annotations.Setup
+  public void setup() {
+    switch (response) {
+    case "consumption":
+      message = "{\"m2m:rsp\":{\"rsc\":2000,\"rqi\":\"3b54de6a5f4e2c11\",\"to\":\"/OpenHab\",\"fr\":\"/[0]/MNAE/2/Consumption/la\",\"pc\":{\"m2m:cin\":{\"rn\":\"0000001c\",\"ri\":\"0076_0000001c\",\"pi\":\"0076\",\"ty\":4,\"ct\":\"20000000T000000Z\",\"lt\":\"20000000T000000Z\",\"st\":28,\"con\":\"{\\\"Electrical\\\":{\\\"Heating\\\":{\\\"D\\\":[0,0,0,0,0,0,0,2,0,3,10,0,0,0,0,0,null,null,null,null,null,null,null,null],\\\"W\\\":[2,3,2,4,2,2,2,1,3,1,2,3,15,0],\\\"M\\\":[90,54,56,54,45,58,51,63,47,44,55,74,81,94,null,null,null,null,null,null,null,null,null,null]}}}\"}}}}";
+      break;
+    default:
+      message = "{\"m2m:rsp\":{\"rsc\":2000,\"rqi\":\"12e741f64af0afd2\",\"to\":\"/OpenHab\",\"fr\":\"/[0]/MNAE/1/Sensor/IndoorTemperature/la\",\"pc\":{\"m2m:cin\":{\"rn\":\"0000000b\",\"ri\":\"006a_0000000b\",\"pi\":\"006a\",\"ty\":4,\"ct\":\"20000000T000000Z\",\"lt\":\"20000000T000000Z\",\"st\":11,\"con\":\"21.5\"}}}}";
+    }
+  }
+
+  @Benchmark
+  public double tree() {
+    JsonObject rsp = JsonParser.parseString(message).getAsJsonObject().get("m2m:rsp").getAsJsonObject();
+    int code = rsp.get("rsc").getAsInt();
+    JsonElement con = JsonHelper.getJsonPath(rsp, "pc", "m2m:cin", "con").get();
+    String value = con.getAsString().strip();
+    if (code != 2000 || value.startsWith("{"))
+      return value.length();
+    return new BigDecimal(value).doubleValue();
+  }
+
+  @Benchmark
+  public double streaming() throws IOException {
+    AdapterResponse rsp = ResponseDecoder.decode(message);
+    String value = rsp.con.strip();
+    if (rsp.rsc != 2000 || value.startsWith("{"))
+      return value.length();
+    return Double.parseDouble(value);
+  }
+
+}
@@ -0,0 +1,51 @@
+package de.karstenbecker.daikin;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * A notify request (op 5) that the adapter sends for a subscription. The con is the content of the new content
+ * instance, the subscription is the sur of the m2m:sgn.
+ */
+@NonNullByDefault
+public class AdapterNotification extends AdapterResponse {
+  /** The resource that sent the notification, used as "to" of the reply */
+  @Nullable
+  public final String from;
+  @Nullable
+  public final String subscription;
+  /** True if this only verifies that the notification target is reachable */
+  public final boolean verification;
+
+  public AdapterNotification(String message, @Nullable String rqi, @Nullable String from, @Nullable String subscription, @Nullable String con,
+      boolean verification) {
+    super(message, rqi, NO_RSC, con);
+    this.from = from;
+    this.subscription = subscription;
+    this.verification = verification;
+  }
+
+  /**
+   * @return the item below MNAE that the subscription belongs to, for example {@code 1/Sensor/IndoorTemperature}, or
+   *         null if the sur has no parent
+   */
+  @Nullable
+  public String getSubscribedItem() {
+    String sur = subscription;
+    if (sur == null)
+      return null;
+    int start = sur.indexOf(RequestFrame.MNAE);
+    start = start < 0 ? 0 : start + RequestFrame.MNAE.length();
+    int end = sur.lastIndexOf('/');
+    if (end <= start)
+      return null;
+    return sur.substring(start, end);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("AdapterNotification [rqi=%s, from=%s, subscription=%s, con=%s, verification=%s]", rqi, from, subscription, con,
+        verification);
+  }
+
+}
@@ -0,0 +1,51 @@
+package de.karstenbecker.daikin;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * The parts of a m2m:rsp that are needed on the polling path. The full Json tree is only built on request.
+ */
+@NonNullByDefault
+public class AdapterResponse {
+  public static final int NO_RSC = -1;
+
+  public final String message;
+  @Nullable
+  public final String rqi;
+  public final int rsc;
+  /** The content of pc/m2m:cin/con, null if the response has none */
+  @Nullable
+  public final String con;
+
+  public AdapterResponse(String message, @Nullable String rqi, int rsc, @Nullable String con) {
+    this.message = message;
+    this.rqi = rqi;
+    this.rsc = rsc;
+    this.con = con;
+  }
+
+  /**
+   * @return the m2m:rsp object, or null if the message does not contain one
+   */
+  @Nullable
+  public JsonObject toJsonObject() {
+    JsonElement ele = JsonParser.parseString(message);
+    if (!ele.isJsonObject())
+      return null;
+    JsonElement rsp = ele.getAsJsonObject().get("m2m:rsp");
+    if (rsp == null || !rsp.isJsonObject())
+      return null;
+    return rsp.getAsJsonObject();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("AdapterResponse [rqi=%s, rsc=%s, con=%s]", rqi, rsc, con);
+  }
+
+}
@@ -0,0 +1,108 @@
+package de.karstenbecker.daikin;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a long lived connection to the adapter. The connection is checked with pings, considered dead when nothing was
+ * received for a while and re-established with an exponential backoff. Polling, setting and setup all share this
+ * session, so steady state polling does not need any handshakes.
+ */
+@NonNullByDefault
+public final class AdapterSession implements Closeable {
+  private static final long PING_INTERVAL_MS = 30_000L;
+  private static final long IDLE_TIMEOUT_MS = 3 * PING_INTERVAL_MS;
+  private static final long INITIAL_BACKOFF_MS = 1_000L;
+  private static final long MAX_BACKOFF_MS = 5 * 60_000L;
+
+  private final Logger logger = LoggerFactory.getLogger(AdapterSession.class);
+
+  private final WebsocketHelper webSocketClient;
+  private final URI url;
+  private final ScheduledFuture<?> keepAlive;
+
+  private long backoffMs = INITIAL_BACKOFF_MS;
+  private long nextAttempt = 0;
+  private volatile int reconnects = 0;
+  private boolean everConnected = false;
+
+  /**
+   * @param scheduler runs the keepalive checks, it can be shared by the sessions of several adapters
+   */
+  public AdapterSession(WebsocketHelper webSocketClient, URI url, ScheduledExecutorService scheduler) {
+    this.webSocketClient = webSocketClient;
+    this.url = url;
+    this.keepAlive = scheduler.scheduleWithFixedDelay(this::checkConnection, PING_INTERVAL_MS, PING_INTERVAL_MS, TimeUnit.MILLISECONDS);
+  }
+
+  public URI getUrl() {
+    return url;
+  }
+
+  public int getReconnects() {
+    return reconnects;
+  }
+
+  /**
+   * Returns true if the session is connected. If it is not, a reconnect is attempted unless the backoff after the last
+   * failed attempt has not yet passed.
+   */
+  public synchronized boolean ensureConnected() {
+    if (webSocketClient.isConnected())
+      return true;
+    long now = System.currentTimeMillis();
+    if (now < nextAttempt)
+      return false;
+    logger.info("Connecting to daikin adapter:" + url);
+    if (webSocketClient.connect(url)) {
+      backoffMs = INITIAL_BACKOFF_MS;
+      nextAttempt = 0;
+      if (everConnected)
+        reconnects++;
+      everConnected = true;
+      return true;
+    }
+    logger.error("Could not connect to daikin adpater:" + url + " retrying in " + backoffMs + "ms");
+    nextAttempt = now + backoffMs;
+    backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+    return false;
+  }
+
+  private void checkConnection() {
+    try {
+      if (!webSocketClient.isConnected()) {
+        ensureConnected();
+        return;
+      }
+      long idle = System.currentTimeMillis() - webSocketClient.getLastActivity();
+      if (idle > IDLE_TIMEOUT_MS) {
+        logger.warn("No frame from daikin adapter for " + idle + "ms, reconnecting");
+        synchronized (this) {
+          webSocketClient.disconnect();
+        }
+        ensureConnected();
+        return;
+      }
+      if (!webSocketClient.sendPing()) {
+        logger.debug("Ping failed, reconnecting");
+        ensureConnected();
+      }
+    } catch (Exception e) {
+      logger.warn("Keepalive check failed", e);
+    }
+  }
+
+  @Override
+  public void close() {
+    keepAlive.cancel(false);
+    webSocketClient.disconnect();
+  }
+
+}
@@ -0,0 +1,57 @@
+package de.karstenbecker.daikin;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The poll interval of a property in adaptive mode. Whenever a poll returns a different value than the poll before, the
+ * interval is halved down to the floor. Every poll that returns the same value grows it by a half up to the ceiling.
+ */
+@NonNullByDefault
+public class AdaptiveInterval {
+  private final int floorSeconds;
+  private final int ceilingSeconds;
+  private int seconds;
+  @Nullable
+  private String lastValue;
+
+  public AdaptiveInterval(int floorSeconds, int ceilingSeconds, int initialSeconds) {
+    this.floorSeconds = Math.max(1, floorSeconds);
+    this.ceilingSeconds = Math.max(this.floorSeconds, ceilingSeconds);
+    this.seconds = Math.min(this.ceilingSeconds, Math.max(this.floorSeconds, initialSeconds));
+  }
+
+  /**
+   * Creates the adaptive interval of a property, or returns null if the property does not use adaptive polling.
+   */
+  @Nullable
+  public static AdaptiveInterval forProperty(DaikinProperty prop) {
+    Integer floor = prop.getAdaptiveMinSeconds();
+    Integer ceiling = prop.getAdaptiveMaxSeconds();
+    int interval = prop.getEffectivePollIntervalSeconds();
+    if (interval <= 0 || (floor == null && ceiling == null))
+      return null;
+    return new AdaptiveInterval(floor != null ? floor : interval, ceiling != null ? ceiling : interval, interval);
+  }
+
+  /**
+   * Adjusts the interval to a newly polled value.
+   *
+   * @return the interval in seconds until the next poll
+   */
+  public synchronized int update(String value) {
+    if (lastValue != null) {
+      if (lastValue.equals(value))
+        seconds = Math.min(ceilingSeconds, seconds + Math.max(1, seconds / 2));
+      else
+        seconds = Math.max(floorSeconds, seconds / 2);
+    }
+    lastValue = value;
+    return seconds;
+  }
+
+  public synchronized int getSeconds() {
+    return seconds;
+  }
+
+}
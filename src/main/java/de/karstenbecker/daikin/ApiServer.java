@@ -0,0 +1,201 @@
+package de.karstenbecker.daikin;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A small HTTP API of the polling service. {@code /history} lists the properties that keep a history, grouped by homie
+ * device, and {@code /history/<device>/<path>?hours=N} returns the values of a property of the last N hours as
+ * {@code [timestamp in ms, value]} pairs. {@code /metrics} returns the latest numeric values in the OpenMetrics format.
+ */
+@NonNullByDefault
+public class ApiServer implements AutoCloseable {
+  private static final int DEFAULT_HOURS = 24;
+
+  private static final Logger logger = LoggerFactory.getLogger(ApiServer.class);
+
+  private final HttpServer server;
+  private final ExecutorService handlers;
+  private final List<DaikinPoller> pollers;
+  /** The last rendered metrics, reused until a value changes */
+  private byte @Nullable [] metricsBody;
+  private long metricsVersion = -1;
+
+  /**
+   * @param pollers the running pollers, the list may change while the server runs
+   */
+  public ApiServer(int port, List<DaikinPoller> pollers) throws IOException {
+    this.pollers = pollers;
+    this.server = HttpServer.create(new InetSocketAddress(port), 0);
+    this.handlers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("daikin-api-", 0).factory());
+    server.setExecutor(handlers);
+    server.createContext("/history", this::handleHistory);
+    server.createContext("/metrics", this::handleMetrics);
+    server.start();
+    logger.info("Serving the API on port " + server.getAddress().getPort());
+  }
+
+  private void handleHistory(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      URI uri = exchange.getRequestURI();
+      String rest = uri.getPath().substring("/history".length());
+      if (rest.startsWith("/"))
+        rest = rest.substring(1);
+      StringWriter body = new StringWriter();
+      try (JsonWriter json = new JsonWriter(body)) {
+        if (rest.isEmpty()) {
+          writeIndex(json);
+        } else {
+          int slash = rest.indexOf('/');
+          DaikinProperty prop = slash < 0 ? null : findProperty(rest.substring(0, slash), rest.substring(slash + 1));
+          if (prop == null || prop.history == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+          }
+          int hours = DEFAULT_HOURS;
+          String query = uri.getQuery();
+          if (query != null && query.startsWith("hours=")) {
+            try {
+              hours = Integer.parseInt(query.substring("hours=".length()));
+            } catch (NumberFormatException e) {
+              hours = -1;
+            }
+            if (hours <= 0 || hours > PropertyHistory.MAX_HOURS) {
+              exchange.sendResponseHeaders(400, -1);
+              return;
+            }
+          }
+          writeHistory(json, rest.substring(0, slash), prop, System.currentTimeMillis() - hours * 3600_000L);
+        }
+      }
+      send(exchange, "application/json", body.toString().getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private void handleMetrics(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      send(exchange, "application/openmetrics-text; version=1.0.0; charset=utf-8", renderMetrics());
+    }
+  }
+
+  /**
+   * The versions of the values only grow, so their sum only stays the same if no value changed.
+   */
+  private synchronized byte[] renderMetrics() {
+    long version = pollers.size();
+    for (DaikinPoller poller : pollers) {
+      MetricValues values = poller.getMetrics();
+      if (values != null)
+        version += values.getVersion();
+    }
+    byte[] body = metricsBody;
+    if (body != null && version == metricsVersion)
+      return body;
+    StringBuilder out = new StringBuilder();
+    out.append("# TYPE daikin_value gauge\n");
+    out.append("# HELP daikin_value The latest value of a numeric adapter property\n");
+    for (DaikinPoller poller : pollers) {
+      MetricValues values = poller.getMetrics();
+      if (values != null)
+        values.render(poller.getDeviceName(), out);
+    }
+    out.append("# EOF\n");
+    body = out.toString().getBytes(StandardCharsets.UTF_8);
+    metricsBody = body;
+    metricsVersion = version;
+    return body;
+  }
+
+  private void writeIndex(JsonWriter json) throws IOException {
+    json.beginObject();
+    for (DaikinPoller poller : pollers) {
+      json.name(poller.getDeviceName()).beginArray();
+      for (DaikinProperty prop : poller.getProperties()) {
+        if (prop.history != null)
+          json.value(prop.getPath());
+      }
+      json.endArray();
+    }
+    json.endObject();
+  }
+
+  private static void writeHistory(JsonWriter json, String device, DaikinProperty prop, long fromMillis) throws IOException {
+    json.beginObject();
+    json.name("device").value(device);
+    json.name("path").value(prop.getPath());
+    json.name("name").value(prop.getName());
+    json.name("unit").value(prop.getUnit());
+    json.name("points").beginArray();
+    IOException[] failed = new IOException[1];
+    prop.history.query(fromMillis, (timestamp, value) -> {
+      if (failed[0] != null)
+        return;
+      try {
+        json.beginArray().value(timestamp);
+        if (Float.isFinite(value))
+          json.value(Float.valueOf(value));
+        else
+          json.nullValue();
+        json.endArray();
+      } catch (IOException e) {
+        failed[0] = e;
+      }
+    });
+    if (failed[0] != null)
+      throw failed[0];
+    json.endArray();
+    json.endObject();
+  }
+
+  @Nullable
+  private DaikinProperty findProperty(String device, String path) {
+    for (DaikinPoller poller : pollers) {
+      if (!poller.getDeviceName().equals(device))
+        continue;
+      for (DaikinProperty prop : poller.getProperties()) {
+        if (prop.getPath().equals(path))
+          return prop;
+      }
+    }
+    return null;
+  }
+
+  private static void send(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", contentType);
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    handlers.shutdownNow();
+  }
+
+}
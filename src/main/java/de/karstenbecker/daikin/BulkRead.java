@@ -0,0 +1,222 @@
+package de.karstenbecker.daikin;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Reads a container together with all containers below it in one request, using the result content option 4
+ * (attributes and child resources). The latest content instance of each container is fanned out to the properties.
+ */
+@NonNullByDefault
+public class BulkRead {
+  private final String item;
+  private final RequestFrame frame;
+  private volatile boolean supported = true;
+
+  /**
+   * @param item the parent container, for example {@code 1/Sensor}
+   */
+  public BulkRead(String item) {
+    this.item = item;
+    this.frame = RequestFrame.retrieveTree(item);
+  }
+
+  public String getItem() {
+    return item;
+  }
+
+  public RequestFrame getFrame() {
+    return frame;
+  }
+
+  /**
+   * @return false once the adapter rejected the bulk read, the properties are then read one by one
+   */
+  public boolean isSupported() {
+    return supported;
+  }
+
+  public void setUnsupported() {
+    supported = false;
+  }
+
+  /**
+   * @return the parent container of the item, or null if it is directly below the group
+   */
+  @Nullable
+  public static String parentOf(String path) {
+    int sep = path.lastIndexOf(Daikin.ITEM_SEP);
+    if (sep <= 0 || path.indexOf(Daikin.ITEM_SEP) == sep)
+      return null;
+    return path.substring(0, sep);
+  }
+
+  /**
+   * Extracts the con of the latest content instance of every container in the reply, in a single streaming pass like
+   * {@link ResponseDecoder}.
+   *
+   * @return the content keyed by the path of the container, empty if the reply has no container tree
+   * @throws IOException if the message is not valid json
+   */
+  public Map<String, String> decode(String message) throws IOException {
+    Map<String, String> result = new HashMap<>();
+    try (JsonReader reader = new JsonReader(new StringReader(message))) {
+      if (!enter(reader, "m2m:rsp") || !enter(reader, "pc") || !enter(reader, "m2m:cnt"))
+        return result;
+      Map<String, String> contents = new HashMap<>();
+      readContainer(reader, contents);
+      for (Entry<String, String> e : contents.entrySet())
+        result.put(e.getKey().isEmpty() ? item : item + Daikin.ITEM_SEP + e.getKey(), e.getValue());
+    } catch (IllegalStateException | NumberFormatException e) {
+      throw new IOException("Failed to decode:" + message, e);
+    }
+    return result;
+  }
+
+  /**
+   * Opens the object the reader is positioned at and skips to the member with the name.
+   *
+   * @return false if there is no such object member
+   */
+  private static boolean enter(JsonReader reader, String name) throws IOException {
+    if (reader.peek() != JsonToken.BEGIN_OBJECT)
+      return false;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if (name.equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT)
+        return true;
+      reader.skipValue();
+    }
+    return false;
+  }
+
+  /**
+   * The content instance with the highest state tag, or the last one if there are none.
+   */
+  private static final class Latest {
+    @Nullable
+    String con;
+    long st = Long.MIN_VALUE;
+  }
+
+  /**
+   * Reads the m2m:cnt the reader is positioned at. Its own content is put with an empty key, the contents of the
+   * containers below it with their path relative to it.
+   *
+   * @return the resource name of the container
+   */
+  @Nullable
+  private static String readContainer(JsonReader reader, Map<String, String> contents) throws IOException {
+    String rn = null;
+    Latest latest = new Latest();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+      case "rn":
+        rn = readPrimitive(reader);
+        break;
+      case "m2m:cin":
+        if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+          reader.beginArray();
+          while (reader.hasNext())
+            readInstance(reader, latest);
+          reader.endArray();
+        } else {
+          readInstance(reader, latest);
+        }
+        break;
+      case "m2m:cnt":
+        if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+          reader.beginArray();
+          while (reader.hasNext())
+            readChild(reader, contents);
+          reader.endArray();
+        } else {
+          readChild(reader, contents);
+        }
+        break;
+      default:
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    if (latest.con != null)
+      contents.put("", latest.con);
+    return rn;
+  }
+
+  private static void readChild(JsonReader reader, Map<String, String> contents) throws IOException {
+    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+      reader.skipValue();
+      return;
+    }
+    Map<String, String> child = new HashMap<>();
+    String rn = readContainer(reader, child);
+    if (rn == null)
+      return;
+    for (Entry<String, String> e : child.entrySet())
+      contents.put(e.getKey().isEmpty() ? rn : rn + Daikin.ITEM_SEP + e.getKey(), e.getValue());
+  }
+
+  /**
+   * Reads a m2m:cin and keeps it if it is later than the latest one so far.
+   */
+  private static void readInstance(JsonReader reader, Latest latest) throws IOException {
+    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+      reader.skipValue();
+      return;
+    }
+    String con = null;
+    long st = Long.MIN_VALUE;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+      case "con":
+        // Structured content is kept as json
+        if (reader.peek() == JsonToken.BEGIN_OBJECT || reader.peek() == JsonToken.BEGIN_ARRAY)
+          con = JsonParser.parseReader(reader).toString();
+        else
+          con = readPrimitive(reader);
+        break;
+      case "st":
+        if (reader.peek() == JsonToken.NUMBER || reader.peek() == JsonToken.STRING)
+          st = reader.nextLong();
+        else
+          reader.skipValue();
+        break;
+      default:
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    if (con != null && (latest.con == null || st >= latest.st)) {
+      latest.con = con;
+      latest.st = st;
+    }
+  }
+
+  @Nullable
+  private static String readPrimitive(JsonReader reader) throws IOException {
+    switch (reader.peek()) {
+    case STRING:
+    case NUMBER:
+      return reader.nextString();
+    case BOOLEAN:
+      return Boolean.toString(reader.nextBoolean());
+    default:
+      reader.skipValue();
+      return null;
+    }
+  }
+
+}
@@ -1,15 +1,22 @@
 package de.karstenbecker.daikin;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Optional;
-import java.util.Set;
 
-import com.google.gson.JsonArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import io.github.dschanoeh.homie_java.Node;
 import io.github.dschanoeh.homie_java.Property;
@@ -17,8 +24,79 @@ import io.github.dschanoeh.homie_java.Property.DataType;
 
 public class Consumption {
 
+  private static final Logger logger = LoggerFactory.getLogger(Consumption.class);
+
+  /** Marks a slot that was not published yet, json has no infinite numbers */
+  private static final double UNKNOWN = Double.NEGATIVE_INFINITY;
+  /** Marks a slot whose last value was null */
+  private static final double NULL = Double.NaN;
+
   private String baseName;
   private Node node;
+  private ConsumptionCounters counters;
+  private String counterPrefix;
+  /** The series keyed by energy name, purpose and field, for example Electrical/Heating/D */
+  private final Map<String, Series> series = new HashMap<>();
+  /** Scratch buffer for the values of a series, reused for every series and poll */
+  private double[] current = new double[24];
+
+  /**
+   * The property handles and last published values of one array, for example the daily heating consumption.
+   */
+  private final class Series {
+    final String[] names;
+    final Property[] slots;
+    final double[] last;
+    final String lastName;
+    final Property lastProperty;
+    double lastNonNull = UNKNOWN;
+    /** Derived values, only for daily arrays when counters are enabled */
+    ConsumptionCounters.Counter counter;
+    String totalName;
+    Property totalProperty;
+    double lastTotal = UNKNOWN;
+    String powerName;
+    Property powerProperty;
+    double lastPower = Double.NaN;
+
+    Series(String energyName, String purpose, String field, int size) {
+      String name = baseName + "-" + energyName.toLowerCase() + "-" + purpose.toLowerCase() + "-" + field.toLowerCase();
+      names = new String[size];
+      slots = new Property[size];
+      last = new double[size];
+      Arrays.fill(last, UNKNOWN);
+      for (int i = 0; i < size; i++) {
+        names[i] = name + "-" + i;
+        Property property = node.getProperty(names[i]);
+        property.setDataType(DataType.INTEGER);
+        property.setUnit("kWh");
+        property.setName(energyName + "/" + purpose + "/" + field + "[" + i + "] " + timeIndicator(field, i, size));
+        property.setRetained(true);
+        slots[i] = property;
+      }
+      lastName = name + "-last";
+      lastProperty = node.getProperty(lastName);
+      lastProperty.setDataType(DataType.INTEGER);
+      lastProperty.setUnit("kWh");
+      lastProperty.setRetained(true);
+      lastProperty.setName(energyName + "/" + purpose + "/" + field+" last non-null value");
+      if (counters != null && "D".equals(field) && size == 2 * ConsumptionCounters.DAY_SLOTS) {
+        counter = counters.get(counterPrefix + "/" + name);
+        totalName = name + "-total";
+        totalProperty = node.getProperty(totalName);
+        totalProperty.setDataType(DataType.FLOAT);
+        totalProperty.setUnit("kWh");
+        totalProperty.setRetained(true);
+        totalProperty.setName(energyName + "/" + purpose + " total");
+        powerName = name + "-power";
+        powerProperty = node.getProperty(powerName);
+        powerProperty.setDataType(DataType.FLOAT);
+        powerProperty.setUnit("kW");
+        powerProperty.setRetained(true);
+        powerProperty.setName(energyName + "/" + purpose + " average power of the last complete 2h");
+      }
+    }
+  }
 
   public Consumption(Node node, String baseName) {
     this.node = node;
@@ -26,7 +104,17 @@ public class Consumption {
   }
 
   public static Consumption doSetup(Node node, String baseName, Optional<String> optional) {
+    return doSetup(node, baseName, optional, null, null);
+  }
+
+  /**
+   * @param counters if not null, the daily arrays are turned into a total and an average power property
+   * @param counterPrefix distinguishes the counters of several adapters that share the counters
+   */
+  public static Consumption doSetup(Node node, String baseName, Optional<String> optional, ConsumptionCounters counters, String counterPrefix) {
     Consumption consumption = new Consumption(node, baseName);
+    consumption.counters = counters;
+    consumption.counterPrefix = counterPrefix;
     if (optional.isPresent()) {
       JsonObject response = JsonParser.parseString(optional.get()).getAsJsonObject();
       JsonElement conValue = JsonHelper.getJsonPath(response, "m2m:rsp", "pc", "m2m:cin", "con").get();
@@ -41,59 +129,142 @@ public class Consumption {
         "{\"Electrical\":{\"Heating\":{\"D\":[0,0,0,0,0,0,0,2,0,3,10,0,0,0,0,0,null,null,null,null,null,null,null,null],\"W\":[2,3,2,4,2,2,2,1,3,1,2,3,15,0],\"M\":[90,54,56,54,45,58,51,63,47,44,55,74,81,94,null,null,null,null,null,null,null,null,null,null]}}}"));
   }
 
-  public Map<String, String> updateValues(String json, boolean setupProperty) {
+  /**
+   * Reads the consumption json in a single streaming pass. In setup mode the properties of all series are created,
+   * otherwise only the slots whose value changed since the last call are published.
+   *
+   * @return the published values keyed by property id, null values stand for slots without data
+   */
+  public synchronized Map<String, String> updateValues(String json, boolean setupProperty) {
+    JfrEvents.ConsumptionUpdate event = new JfrEvents.ConsumptionUpdate();
+    event.begin();
     Map<String, String> result = new LinkedHashMap<>();
-    JsonObject obj = JsonParser.parseString(json).getAsJsonObject();
-    Set<Entry<String, JsonElement>> rootSet = obj.entrySet();
-    for (Entry<String, JsonElement> root : rootSet) {
-      Set<Entry<String, JsonElement>> midSet = root.getValue().getAsJsonObject().entrySet();
-      for (Entry<String, JsonElement> mid : midSet) {
-        Set<Entry<String, JsonElement>> dataSet = mid.getValue().getAsJsonObject().entrySet();
-        for (Entry<String, JsonElement> data : dataSet) {
-          String energyName = root.getKey().strip();
-          String purpose = mid.getKey().strip();
-          String field = data.getKey().strip();
-          String name = baseName + "-" + energyName.toLowerCase() + "-" + purpose.toLowerCase() + "-" + field.toLowerCase();
-          JsonArray values = data.getValue().getAsJsonArray();
-          Number lastNonNull = null;
-          int size = values.size();
-          for (int i = 0; i < size; i++) {
-            JsonElement value = values.get(i);
-            String nodeName = name + "-" + i;
-            Property property = node.getProperty(nodeName);
-            if (setupProperty) {
-              property.setDataType(DataType.INTEGER);
-              property.setUnit("kWh");
-              property.setName(energyName + "/" + purpose + "/" + field + "[" + i + "] " + timeIndicator(field, i, size));
-              property.setRetained(true);
-            } else {
-              if (value.isJsonNull()) {
-                result.put(nodeName, null);
-                property.send((Long) null);
-              } else {
-                lastNonNull = value.getAsNumber();
-                result.put(nodeName, lastNonNull.toString());
-                property.send(lastNonNull.longValue());
-              }
+    try (JsonReader reader = new JsonReader(new StringReader(json))) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String energyName = reader.nextName().strip();
+        reader.beginObject();
+        while (reader.hasNext()) {
+          String purpose = reader.nextName().strip();
+          reader.beginObject();
+          while (reader.hasNext()) {
+            String field = reader.nextName().strip();
+            int size = readValues(reader);
+            String key = energyName + "/" + purpose + "/" + field;
+            Series data = series.get(key);
+            if (data == null || data.slots.length != size) {
+              data = new Series(energyName, purpose, field, size);
+              series.put(key, data);
             }
+            if (!setupProperty)
+              publishChanges(data, size, result);
           }
-          String nodeName = name + "-last";
-          Property property = node.getProperty(nodeName);
-          if (setupProperty) {
-            property.setDataType(DataType.INTEGER);
-            property.setUnit("kWh");
-            property.setRetained(true);
-            property.setName(energyName + "/" + purpose + "/" + field+" last non-null value");
-          } else {
-            result.put(nodeName, lastNonNull.toString());
-            property.send(lastNonNull.longValue());
-          }
+          reader.endObject();
         }
+        reader.endObject();
       }
+      reader.endObject();
+    } catch (IOException | IllegalStateException | NumberFormatException e) {
+      logger.warn("Failed to read consumption:" + json, e);
+    }
+    event.end();
+    if (event.shouldCommit()) {
+      event.property = baseName;
+      event.jsonBytes = json.length();
+      event.series = series.size();
+      event.changed = result.size();
+      event.commit();
     }
     return result;
   }
 
+  /**
+   * Reads the array the reader is positioned at into {@link #current}.
+   *
+   * @return the number of values
+   */
+  private int readValues(JsonReader reader) throws IOException {
+    int size = 0;
+    reader.beginArray();
+    while (reader.hasNext()) {
+      if (size == current.length)
+        current = Arrays.copyOf(current, size * 2);
+      if (reader.peek() == JsonToken.NULL) {
+        reader.nextNull();
+        current[size++] = NULL;
+      } else {
+        current[size++] = reader.nextDouble();
+      }
+    }
+    reader.endArray();
+    return size;
+  }
+
+  /**
+   * The slots are homie integers, so the homie value is truncated as before, the returned values keep the fraction.
+   */
+  private void publishChanges(Series data, int size, Map<String, String> result) {
+    double lastNonNull = UNKNOWN;
+    for (int i = 0; i < size; i++) {
+      double value = current[i];
+      if (!Double.isNaN(value))
+        lastNonNull = value;
+      // Unlike ==, compare treats NULL as equal to itself
+      if (Double.compare(value, data.last[i]) == 0)
+        continue;
+      data.last[i] = value;
+      if (Double.isNaN(value)) {
+        result.put(data.names[i], null);
+        data.slots[i].send((Long) null);
+      } else {
+        result.put(data.names[i], format(value));
+        data.slots[i].send((long) value);
+      }
+    }
+    if (lastNonNull != UNKNOWN && lastNonNull != data.lastNonNull) {
+      data.lastNonNull = lastNonNull;
+      result.put(data.lastName, format(lastNonNull));
+      data.lastProperty.send((long) lastNonNull);
+    }
+    if (data.counter != null)
+      publishDerived(data, result);
+  }
+
+  /**
+   * Publishes the total of the counter and the average power of the last complete slot. The last non-null slot of
+   * today is the one that is still being filled.
+   */
+  private void publishDerived(Series data, Map<String, String> result) {
+    double total = counters.update(data.counter, current, LocalDate.now());
+    if (total != data.lastTotal) {
+      data.lastTotal = total;
+      result.put(data.totalName, format(total));
+      data.totalProperty.send(total);
+    }
+    int filling = -1;
+    for (int i = ConsumptionCounters.DAY_SLOTS; i < 2 * ConsumptionCounters.DAY_SLOTS; i++) {
+      if (!Double.isNaN(current[i]))
+        filling = i;
+    }
+    if (filling < 1 || Double.isNaN(current[filling - 1]))
+      return;
+    double power = current[filling - 1] / 2.0;
+    if (power != data.lastPower) {
+      data.lastPower = power;
+      result.put(data.powerName, Double.toString(power));
+      data.powerProperty.send(power);
+    }
+  }
+
+  /**
+   * @return whole numbers without a fraction, as the adapter sends them
+   */
+  static String format(double value) {
+    if (value == Math.rint(value) && Math.abs(value) < 1e15)
+      return Long.toString((long) value);
+    return Double.toString(value);
+  }
+
   private static final String DAYS[]= {"Mon", "Tue", "Wed", "Thu", "Fri", "Sat", "Sun"};
   private static final String MONTH[]= {"Jan", "Feb","Mar","Apr","May","Jun","Jul","Aug","Sep","Oct","Nov","Dec"};
   private String timeIndicator(String field, int i, int size) {
@@ -0,0 +1,178 @@
+package de.karstenbecker.daikin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Turns the rolling daily consumption arrays into monotonic counters. The D arrays hold 12 two-hour slots of yesterday
+ * followed by 12 of today, and shift by 12 slots at midnight. The counter adds up the complete days and the current
+ * day, so it only ever grows. The day is the local date of the update, so the adapter is expected to use the same time
+ * zone. The state of all counters is kept in a small binary file, so the counters continue after a restart.
+ */
+public class ConsumptionCounters {
+  private static final int VERSION = 3;
+  private static final long NO_DAY = Long.MIN_VALUE;
+  /** The slots of one day in a D array */
+  static final int DAY_SLOTS = 12;
+
+  private static final Logger logger = LoggerFactory.getLogger(ConsumptionCounters.class);
+
+  private final File file;
+  private final Map<String, Counter> counters = new TreeMap<>();
+
+  /**
+   * The state of one counter. Slot values are in kWh and may have a fraction.
+   */
+  public static final class Counter {
+    final String key;
+    /** The consumption of all complete days */
+    double base;
+    /** The consumption of the current day at the last update */
+    double today;
+    /** The number of non-null slots of the current day at the last update */
+    int todaySlots;
+    /** The last published total */
+    double total;
+    /** The epoch day of the last update */
+    long day = NO_DAY;
+
+    Counter(String key) {
+      this.key = key;
+    }
+
+    /**
+     * Updates the counter from a D array, null slots are given as NaN.
+     *
+     * @param date the local date of the update
+     * @return the new total in kWh
+     */
+    double update(double[] values, LocalDate date) {
+      double yesterdaySum = 0;
+      double todaySum = 0;
+      int slots = 0;
+      for (int i = 0; i < DAY_SLOTS; i++) {
+        if (!Double.isNaN(values[i]))
+          yesterdaySum += values[i];
+        if (!Double.isNaN(values[DAY_SLOTS + i])) {
+          todaySum += values[DAY_SLOTS + i];
+          slots++;
+        }
+      }
+      long epochDay = date.toEpochDay();
+      if (day != NO_DAY && epochDay < day) {
+        logger.warn("Ignoring the update of consumption counter " + key + " on " + date + ", it was last updated on " + LocalDate.ofEpochDay(day));
+        return total;
+      }
+      if (day != NO_DAY && epochDay > day) {
+        // The array shifted, what was today at the last update is now complete
+        if (epochDay == day + 1) {
+          base += yesterdaySum;
+        } else {
+          // Only what was seen of the last day and the complete day before this one are known
+          base += today + yesterdaySum;
+          logger.warn("Consumption counter " + key + " was last updated on " + LocalDate.ofEpochDay(day) + ", the consumption after that until "
+              + date.minusDays(1) + " is not counted");
+        }
+      }
+      day = epochDay;
+      today = todaySum;
+      todaySlots = slots;
+      // Corrections of the adapter must not make the counter go back
+      total = Math.max(total, base + today);
+      return total;
+    }
+  }
+
+  private ConsumptionCounters(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Reads the counters from the file. If the file does not exist or can not be read, the counters start at 0.
+   */
+  public static ConsumptionCounters load(File file) {
+    ConsumptionCounters counters = new ConsumptionCounters(file);
+    if (!file.exists())
+      return counters;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+      if (in.readInt() != VERSION)
+        throw new IOException("Unknown version");
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String key = in.readUTF();
+        Counter counter = new Counter(key);
+        counter.base = in.readDouble();
+        counter.today = in.readDouble();
+        counter.todaySlots = in.readInt();
+        counter.day = in.readLong();
+        counter.total = in.readDouble();
+        counters.counters.put(key, counter);
+      }
+    } catch (IOException e) {
+      logger.warn("Ignoring consumption counters " + file + " that could not be read: " + e.getMessage());
+      counters.counters.clear();
+    }
+    return counters;
+  }
+
+  public synchronized Counter get(String key) {
+    return counters.computeIfAbsent(key, Counter::new);
+  }
+
+  /**
+   * Updates the counter and writes all counters to the file.
+   *
+   * @param date the local date of the update
+   * @return the new total in kWh
+   */
+  public synchronized double update(Counter counter, double[] values, LocalDate date) {
+    double before = counter.total;
+    int slotsBefore = counter.todaySlots;
+    long dayBefore = counter.day;
+    double total = counter.update(values, date);
+    if (total != before || counter.todaySlots != slotsBefore || counter.day != dayBefore) {
+      try {
+        save();
+      } catch (IOException e) {
+        logger.warn("Failed to write consumption counters " + file, e);
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Writes to a temporary file first, so a crash while writing does not lose the counters.
+   */
+  private void save() throws IOException {
+    Path tmp = file.toPath().resolveSibling(file.getName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      out.writeInt(VERSION);
+      out.writeInt(counters.size());
+      for (Entry<String, Counter> e : counters.entrySet()) {
+        Counter counter = e.getValue();
+        out.writeUTF(e.getKey());
+        out.writeDouble(counter.base);
+        out.writeDouble(counter.today);
+        out.writeInt(counter.todaySlots);
+        out.writeLong(counter.day);
+        out.writeDouble(counter.total);
+      }
+    }
+    Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+}
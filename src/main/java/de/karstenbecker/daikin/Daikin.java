@@ -6,10 +6,14 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.math.BigDecimal;
 import java.net.*;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.apache.commons.cli.CommandLine;
@@ -18,7 +22,7 @@ import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
-import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.jetty.websocket.client.WebSocketClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,25 +32,13 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
 import de.karstenbecker.daikin.DaikinProperty.DataType;
-import de.karstenbecker.daikin.DaikinProperty.PollingInterval;
-import de.karstenbecker.daikin.DaikinProperty.PostProcessing;
 import de.karstenbecker.daikin.ui.SetupUI;
-import io.github.dschanoeh.homie_java.Configuration;
-import io.github.dschanoeh.homie_java.Homie;
-import io.github.dschanoeh.homie_java.Homie.State;
-import io.github.dschanoeh.homie_java.Node;
-import io.github.dschanoeh.homie_java.Property;
-import io.github.dschanoeh.homie_java.PropertySetCallback;
 
 import javax.jmdns.JmDNS;
 import javax.jmdns.ServiceEvent;
 import javax.jmdns.ServiceListener;
 
-public class Daikin implements PropertySetCallback {
-  private static final long MINUTELY_MS = 60000L;
-  private static final long HOURLY_MS = 60 * MINUTELY_MS;
-  private static final long BI_HOURLY_MS = 2 * HOURLY_MS;
-  private static final long DAILY_MS = 24 * HOURLY_MS;
+public class Daikin {
 
   public class DaikinInformation {
     public final String id;
@@ -74,13 +66,21 @@ public class Daikin implements PropertySetCallback {
 
   private final Logger logger = LoggerFactory.getLogger(Daikin.class);
 
+  private final WebSocketClient client;
   private final WebsocketHelper webSocketClient;
+  private final List<DaikinPoller> activePollers = new CopyOnWriteArrayList<>();
   public static final String ITEM_SEP = "/";
-  private URI url;
-  private final Map<String, DaikinProperty> idToProp = new HashMap<>();
+  /** Most discovery probes are answered right away with 4004, so more of them are kept in flight than while polling */
+  private static final int DISCOVERY_MAX_IN_FLIGHT = 8;
+  private File discoveryCacheFile = new File(DiscoveryCache.DEFAULT_FILE);
+  private boolean rescan = false;
+  private int discoveryRequests;
 
   public Daikin() throws Exception {
-    webSocketClient = new WebsocketHelper();
+    client = new WebSocketClient();
+    client.start();
+    webSocketClient = new WebsocketHelper(client);
+    webSocketClient.setMaxInFlight(DISCOVERY_MAX_IN_FLIGHT);
   }
 
   public DaikinInformation getInformation(InetSocketAddress adr) throws IOException, InterruptedException {
@@ -90,6 +90,10 @@ public class Daikin implements PropertySetCallback {
       logger.debug("Discovery failed to connect to:" + url);
       return null;
     }
+    return readInformation();
+  }
+
+  private DaikinInformation readInformation() throws IOException, InterruptedException {
     Optional<String> reply = webSocketClient.sendDiscovery();
     if (reply.isEmpty())
       return null;
@@ -98,12 +102,22 @@ public class Daikin implements PropertySetCallback {
     return new DaikinInformation(description);
   }
 
-  private URI getBaseURL(InetSocketAddress adr) {
-    return URI.create("ws://" + adr.getHostString() + ":" + adr.getPort() + "/mca");
+  /**
+   * Sets the file in which discovery results are cached, null disables the cache.
+   */
+  public void setDiscoveryCacheFile(File discoveryCacheFile) {
+    this.discoveryCacheFile = discoveryCacheFile;
   }
 
-  private URI getBaseURL(DaikinPollingSettings settings) {
-    return URI.create("ws://" + settings.getDaikinIP() + ":" + settings.getDaikinPort() + "/mca");
+  /**
+   * If set, the next discoveries ignore what is cached for the unit and probe all endpoints again.
+   */
+  public void setRescan(boolean rescan) {
+    this.rescan = rescan;
+  }
+
+  private URI getBaseURL(InetSocketAddress adr) {
+    return URI.create("ws://" + adr.getHostString() + ":" + adr.getPort() + "/mca");
   }
 
   public Set<DaikinProperty> discoverProperties(InetSocketAddress adr, List<String> endpoints) {
@@ -112,23 +126,46 @@ public class Daikin implements PropertySetCallback {
     try {
       if (!webSocketClient.connect(url))
         return null;
+      discoveryRequests = 0;
+      DiscoveryCache cache = null;
+      Map<String, JsonObject> cached = new HashMap<>();
+      if (discoveryCacheFile != null) {
+        DaikinInformation information = null;
+        try {
+          information = readInformation();
+        } catch (IOException e) {
+          logger.warn("Could not identify the unit, the discovery cache is not used: " + e.getMessage());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return null;
+        }
+        if (information != null) {
+          cache = DiscoveryCache.load(discoveryCacheFile);
+          if (rescan)
+            cache.invalidate(information);
+          cached = cache.forUnit(information);
+          logger.debug("Found " + cached.size() + " cached replies for " + information);
+        }
+      }
       int code = -1;
       int i = 0;
       Set<DaikinProperty> properties = new TreeSet<>();
       do {
-        Optional<JsonObject> obj = webSocketClient.doQuery(Integer.toString(i));
+        String group = Integer.toString(i);
+        Map<String, Optional<JsonObject>> groupReplies = query(List.of(group, group + "/UnitProfile/la"), cached);
+        Optional<JsonObject> obj = groupReplies.get(group);
         if (obj.isEmpty())
           return null;
         code = obj.get().get("rsc").getAsInt();
         if (code == 2000) {
-          String groupName = Integer.toString(i);
+          String groupName = group;
           Optional<JsonElement> label = JsonHelper.getJsonPath(obj.get(), "pc", "m2m:cnt", "lbl");
           if (label.isPresent() && label.get().isJsonPrimitive()) {
             String temp = label.get().getAsString();
             groupName = temp.substring(temp.indexOf("/") + 1);
             logger.debug("Using " + groupName + " as node name.");
           }
-          Optional<JsonObject> unitProfileOpt = webSocketClient.doQuery(i + "/UnitProfile/la");
+          Optional<JsonObject> unitProfileOpt = groupReplies.get(group + "/UnitProfile/la");
           if (unitProfileOpt.isEmpty())
             return null;
           Optional<JsonElement> sub = JsonHelper.getJsonPath(unitProfileOpt.get(), "pc", "m2m:cin", "con");
@@ -137,23 +174,67 @@ public class Daikin implements PropertySetCallback {
           String valObj = sub.get().getAsString();
           logger.debug("Profile:" + valObj);
 
+          List<String> groupEndpoints = new ArrayList<>();
           for (String endpoint : endpoints) {
-            checkEndpoint(i + endpoint, properties, groupName);
+            groupEndpoints.add(i + endpoint);
+          }
+          // The candidates of each level are requested at once, the helper keeps a bounded number of them in flight
+          DiscoveryPlanner planner = new DiscoveryPlanner(group, JsonParser.parseString(valObj).getAsJsonObject(), groupEndpoints);
+          long start = System.currentTimeMillis();
+          Map<String, JsonObject> groupCache = cached;
+          Map<String, Optional<JsonObject>> replies = planner.run(items -> query(items, groupCache));
+          logger.info("Probed " + planner.getRequests() + " paths of group " + groupName + " instead of " + planner.getNaiveRequests() + ", saving "
+              + (planner.getNaiveRequests() - planner.getRequests()) + " requests, in " + (System.currentTimeMillis() - start) + "ms");
+          for (String endpoint : planner.getProbedEndpoints()) {
+            checkEndpoint(endpoint, replies.get(endpoint + "/la"), properties, groupName);
           }
-          createChannelsFromJSON(valObj, i, properties, groupName);
+          buildChannels(planner.getProbes(), replies, properties, groupName);
         }
         // {"m2m:rsp":{"rsc":2000,"rqi":"12e741f64af0afd2","to":"/OpenHab","fr":"/[0]/MNAE/0/la","pc":{"m2m:cin":{"rn":"0000000b","ri":"006a_0000000b","pi":"006a","ty":4,"ct":"20000000T000000Z","lt":"20000000T000000Z","st":11,"con":"{\"version\":\"v1.2.3\"}"}}}}
         // {"m2m:rsp":{"rsc":4004,"rqi":"1c3ac0b7592824ee","to":"/OpenHab","fr":"/[0]/MNAE/3/la"}}
         i++;
       } while (code == 2000);
+      logger.info("Discovery sent " + discoveryRequests + " requests to the adapter");
+      if (cache != null) {
+        try {
+          cache.save();
+        } catch (IOException e) {
+          logger.warn("Failed to write discovery cache " + discoveryCacheFile, e);
+        }
+      }
       return properties;
     } finally {
       webSocketClient.disconnect();
     }
   }
 
-  private void checkEndpoint(String item, Set<DaikinProperty> properties, String groupName) {
-    Optional<JsonObject> objQueryResult = webSocketClient.doQuery(item + "/la");
+  /**
+   * Answers the items from the cache where possible, the others are queried from the adapter and added to the cache.
+   */
+  private Map<String, Optional<JsonObject>> query(Collection<String> items, Map<String, JsonObject> cached) {
+    Map<String, Optional<JsonObject>> result = new LinkedHashMap<>();
+    List<String> missing = new ArrayList<>();
+    for (String item : items) {
+      JsonObject hit = cached.get(item);
+      result.put(item, Optional.ofNullable(hit));
+      if (hit == null)
+        missing.add(item);
+    }
+    if (missing.isEmpty())
+      return result;
+    discoveryRequests += missing.size();
+    for (Entry<String, Optional<JsonObject>> reply : webSocketClient.doQueries(missing).entrySet()) {
+      result.put(reply.getKey(), reply.getValue());
+      if (reply.getValue().isPresent()) {
+        JsonObject entry = DiscoveryCache.toCacheEntry(reply.getValue().get());
+        if (entry != null)
+          cached.put(reply.getKey(), entry);
+      }
+    }
+    return result;
+  }
+
+  private void checkEndpoint(String item, Optional<JsonObject> objQueryResult, Set<DaikinProperty> properties, String groupName) {
     if (objQueryResult.isEmpty()) // There should be enough debug output in doQuery
       return;
     int code = objQueryResult.get().get("rsc").getAsInt();
@@ -170,52 +251,29 @@ public class Daikin implements PropertySetCallback {
     }
   }
 
-  private void createChannelsFromJSON(String unitProfileString, int i, Set<DaikinProperty> properties, String groupName) {
-    JsonObject unitProfile = JsonParser.parseString(unitProfileString).getAsJsonObject();
-    Set<String> primitives = new HashSet<>();
-    buildChannels(unitProfile, Integer.toString(i), properties, primitives, groupName);
-  }
-
-  private void buildChannels(JsonElement root, String item, Set<DaikinProperty> properties, Set<String> primitives, String groupName) {
-    if (root.isJsonPrimitive()) {
-      item += ITEM_SEP + root.getAsString();
-      primitives.add(item);
-    }
-    try {
-      Optional<JsonObject> objQueryResult = webSocketClient.doQuery(item + "/la");
-      if (objQueryResult.isEmpty()) // There should be enough debug output in doQuery
-        return;
-      int code = objQueryResult.get().get("rsc").getAsInt();
-      logger.trace("Obj:" + item + " " + code + " " + objQueryResult);
-      if (code == 2000) {
-        if (item.length() > 1) { // This drops channels that are at the root because they don't provide any
-          // interesting data
+  private void buildChannels(List<DiscoveryPlanner.Probe> probes, Map<String, Optional<JsonObject>> replies, Set<DaikinProperty> properties, String groupName) {
+    for (DiscoveryPlanner.Probe probe : probes) {
+      if (!probe.probed)
+        continue;
+      String item = probe.item;
+      try {
+        Optional<JsonObject> objQueryResult = replies.get(item + "/la");
+        if (objQueryResult.isEmpty()) // There should be enough debug output in doQuery
+          continue;
+        int code = objQueryResult.get().get("rsc").getAsInt();
+        logger.trace("Obj:" + item + " " + code + " " + objQueryResult);
+        if (code == 2000) {
           logger.debug("Found channel:" + item);
           DaikinProperty daikinProperty = new DaikinProperty(item, groupName);
-          guessType(item, daikinProperty, objQueryResult.get(), root);
+          guessType(item, daikinProperty, objQueryResult.get(), probe.profileNode);
           System.out.println("Created property:" + daikinProperty);
           if (!properties.add(daikinProperty)) {
             properties.remove(daikinProperty);
             properties.add(daikinProperty);
           }
         }
-      }
-    } catch (Exception e) {
-      logger.debug("Error:", e);
-      return;
-    }
-    if (root.isJsonArray()) {
-      JsonArray array = root.getAsJsonArray();
-      for (JsonElement ele : array) {
-        buildChannels(ele, item, properties, primitives, groupName);
-      }
-      return;
-    }
-    if (root.isJsonObject()) {
-      JsonObject obj = root.getAsJsonObject();
-      for (String key : obj.keySet()) {
-        JsonElement ele = obj.get(key);
-        buildChannels(ele, item + ITEM_SEP + key, properties, primitives, groupName);
+      } catch (Exception e) {
+        logger.debug("Error:", e);
       }
     }
   }
@@ -316,12 +374,23 @@ public class Daikin implements PropertySetCallback {
     options.addOption(new Option("w", "writeSettings", true, "Run endpoint checking without GUI and write config file. Specify IP as argument"));
     options.addOption(new Option("p", "polling", false, "Run polling from settings"));
     options.addOption(new Option("d", "discover", false, "Discovers all daikin adpater"));
+    options.addOption(new Option("r", "rescan", false, "Ignore the discovery cache of the unit and probe all endpoints again"));
+    options.addOption(new Option("s", "simulate", true, "Runs a simulated adapter on the given port, for testing polling and subscriptions"));
     CommandLineParser parser = new DefaultParser();
     CommandLine cmd = parser.parse(options, args);
     File configFile = new File("PollingSettings.json");
     if (cmd.hasOption('c')) {
       configFile = new File(cmd.getOptionValue('c'));
     }
+    if (cmd.hasOption('r')) {
+      daikin.setRescan(true);
+    }
+    if (cmd.hasOption('s')) {
+      SimulatedAdapter adapter = new SimulatedAdapter(Integer.parseInt(cmd.getOptionValue('s')));
+      adapter.start();
+      adapter.join();
+      System.exit(0);
+    }
     if (cmd.hasOption('d')) {
       var addresses = daikin.discoverDevice();
       if (addresses.isPresent()) {
@@ -359,7 +428,6 @@ public class Daikin implements PropertySetCallback {
       }
       DaikinPollingSettings settings = DaikinPollingSettings.fromFile(configFile);
       daikin.startPolling(settings);
-      daikin.webSocketClient.disconnect();
       System.exit(0);
     }
     HelpFormatter formatter = new HelpFormatter();
@@ -372,123 +440,46 @@ public class Daikin implements PropertySetCallback {
     return reader.lines().collect(Collectors.toList());
   }
 
-  public void startPolling(DaikinPollingSettings settings) {
-    Configuration config = new Configuration();
-    config.setBrokerUrl(settings.getHomieServer());
-    config.setDeviceID(settings.getHomieDeviceName());
-    config.setDeviceName(settings.getHomieDeviceName());
-    config.setBrokerUsername(settings.getHomieUser());
-    config.setBrokerPassword(settings.getHomiePassword());
-    if (settings.getInfluxTopic() != null) {
-      logger.warn("Logging influx to Topic:" + settings.getInfluxTopic());
-    }
-
-    Homie homie = new Homie(config, "de.karstenbecker.daikin", "0.0.1");
-    Map<String, Node> nodes = new HashMap<>();
-    url = getBaseURL(settings);
-    for (DaikinProperty prop : settings.getProperties()) {
-      if (prop.getPollInterval() == PollingInterval.NEVER)
-        continue;
-      String groupName = prop.getGroupName();
-      Node node = nodes.get(groupName);
-      if (node == null) {
-        node = homie.createNode(groupName.toLowerCase(), groupName);
-        node.setName(groupName);
-        nodes.put(groupName, node);
-      }
-      Property property = node.getProperty(prop.getId());
-      property.setDataType(prop.getDataType().toHomieDataType());
-      property.setFormat(prop.getFormat());
-      property.setName(prop.getName());
-      property.setRetained(prop.getRetained());
-      property.setUnit(prop.getUnit());
-      idToProp.put(property.getID(), prop);
-      if (prop.getSettable()) {
-        property.makeSettable(this);
+  /**
+   * Polls all configured adapters concurrently until the process is stopped. The adapters share the websocket client
+   * and its threads.
+   */
+  public void startPolling(DaikinPollingSettings settings) throws InterruptedException, IOException {
+    List<DaikinAdapterSettings> adapters = settings.getAdapters();
+    Set<String> deviceNames = new HashSet<>();
+    for (DaikinAdapterSettings adapter : adapters) {
+      if (!deviceNames.add(adapter.getHomieDeviceName()))
+        throw new IllegalArgumentException("The homie device name " + adapter.getHomieDeviceName() + " is used by more than one adapter");
+    }
+    ConsumptionCounters counters = null;
+    if (settings.getConsumptionStateFile() != null)
+      counters = ConsumptionCounters.load(new File(settings.getConsumptionStateFile()));
+    // All adapters are set up before the first poller starts, so a failing setup does not leave pollers running
+    List<DaikinPoller> setUp = new ArrayList<>();
+    try (ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("daikin-keepalive").factory())) {
+      for (DaikinAdapterSettings adapter : adapters) {
+        DaikinPoller poller = new DaikinPoller(settings, adapter, new WebsocketHelper(client), scheduler, counters);
+        poller.setup();
+        setUp.add(poller);
       }
-      prop.homieProperty = property;
-      if (prop.getPostProcessing() == PostProcessing.CONSUMPTION) {
-        synchronized (webSocketClient) {
+      ApiServer api = settings.getApiPort() > 0 ? new ApiServer(settings.getApiPort(), activePollers) : null;
+      // Every poller runs on its own virtual thread, closing the executor waits until all of them have stopped
+      try (ExecutorService pollers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("daikin-poller-", 0).factory())) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+          pollers.shutdownNow();
           try {
-            if (!webSocketClient.connect(url))
-              logger.error("Could not connect to daikin adpater:" + url);
-            prop.postProcessor = Consumption.doSetup(node, property.getID(), webSocketClient.sendQuery(prop.getPath() + "/la"));
-            webSocketClient.disconnect();
-          } catch (Exception e) {
-            logger.error("Failed to collect data for setup", e);
-          }
-        }
-
-      }
-    }
-    homie.setup();
-    waitForHomie(homie);
-    synchronized (webSocketClient) {
-      try {
-        if (!webSocketClient.connect(url))
-          logger.error("Could not connect to daikin adpater:" + url);
-        for (DaikinProperty prop : settings.getProperties()) {
-          if (prop.getPollInterval() != PollingInterval.NEVER) {
-            pollItem(prop);
-          }
-        }
-        webSocketClient.disconnect();
-      } catch (Exception e) {
-        logger.error("Failed to collect data", e);
-      }
-    }
-    long currentRun = System.currentTimeMillis();
-    long nextMinutely = currentRun + MINUTELY_MS;
-    long nextHourly = currentRun + HOURLY_MS;
-    long nextBiHourly = currentRun + BI_HOURLY_MS;
-    long nextDaily = currentRun + DAILY_MS;
-    while (true) {
-      currentRun = System.currentTimeMillis();
-      waitForHomie(homie);
-      try {
-        synchronized (webSocketClient) {
-          if (!webSocketClient.connect(url)) {
-            logger.error("Could not connect to daikin adpater:" + url);
-            Thread.sleep(30000);
-            continue;
-          }
-          String influxString = pollItems(settings, nextMinutely, nextHourly, nextBiHourly, nextDaily, currentRun);
-          if (influxString != null && !influxString.isBlank() && settings.getInfluxTopic() != null) {
-            logger.trace("Posting influx message:"+influxString);
-            boolean publish = homie.publish(settings.getInfluxTopic(), new MqttMessage(influxString.getBytes(StandardCharsets.UTF_8)));
-            if (!publish) {
-              logger.warn("Failed to post influx message:"+influxString);
-            }
+            pollers.awaitTermination(10, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
           }
-          webSocketClient.disconnect();
-        }
-        if (currentRun > nextMinutely) {
-          nextMinutely = nextMinutely + MINUTELY_MS;
-        }
-        if (currentRun > nextHourly) {
-          nextHourly = nextHourly + HOURLY_MS;
-        }
-        if (currentRun > nextBiHourly) {
-          nextBiHourly = nextBiHourly + BI_HOURLY_MS;
+        }, "daikin-shutdown"));
+        for (DaikinPoller poller : setUp) {
+          activePollers.add(poller);
+          pollers.submit(poller);
         }
-        if (currentRun > nextDaily) {
-          nextDaily = nextDaily + DAILY_MS;
-        }
-      } catch (Exception e) {
-        logger.error("Failed to collect data", e);
-      }
-      try {
-        Thread.sleep(5000);
-      } catch (InterruptedException e) {
-      }
-    }
-  }
-
-  private void waitForHomie(Homie homie) {
-    while (homie.getState() != State.READY) {
-      try {
-        Thread.sleep(100);
-      } catch (InterruptedException e) {
+      } finally {
+        activePollers.clear();
+        if (api != null)
+          api.close();
       }
     }
   }
@@ -533,106 +524,6 @@ public class Daikin implements PropertySetCallback {
     return Optional.empty();
   }
 
-  private String pollItems(DaikinPollingSettings settings, long nextMinutely, long nextHourly, long nextBiHourly, long nextDaily, long currentRun) {
-    StringJoiner items = new StringJoiner(",");
-    for (DaikinProperty prop : settings.getProperties()) {
-      long compareAgainst = Long.MAX_VALUE;
-      switch (prop.getPollInterval()) {
-      case DAILY:
-        compareAgainst = nextDaily;
-        break;
-      case BI_HOURLY:
-        compareAgainst = nextBiHourly;
-        break;
-      case HOURLY:
-        compareAgainst = nextHourly;
-        break;
-      case MINUTELY:
-        compareAgainst = nextMinutely;
-        break;
-      case NEVER:
-      case ONCE:
-      default:
-        break;
-      }
-      if (currentRun > compareAgainst) {
-        if (prop.getPollInterval() != PollingInterval.MINUTELY)
-          logger.warn("Checking " + prop);
-        Map<String, String> values = pollItem(prop);
-        if (values != null) {
-          for (Entry<String, String> e : values.entrySet()) {
-            if (e.getValue()!=null)
-              items.add(e.getKey() + "=" + e.getValue());
-          }
-        }
-      }
-    }
-    if (items.length() == 0)
-      return null;
-    return settings.getInfluxTable() + ",qfn=" + settings.getInfluxQFN() + " " + items.toString() + " " + (System.currentTimeMillis() * 1000000L);
-  }
-
-  private Map<String, String> pollItem(DaikinProperty property) {
-    Map<String, String> result = new LinkedHashMap<>();
-    Optional<JsonObject> objQueryResult = webSocketClient.doQuery(property.getPath() + "/la");
-    if (objQueryResult.isEmpty()) {
-      logger.warn("failed to read " + property.getPath());
-      return null;
-    }
-    int code = objQueryResult.get().get("rsc").getAsInt();
-    logger.debug("Obj:" + property.getName() + " " + code + " " + objQueryResult);
-    if (code == 2000) {
-      JsonElement conValue = JsonHelper.getJsonPath(objQueryResult.get(), "pc", "m2m:cin", "con").get();
-      String value = conValue.getAsString().strip();
-      if (property.getPostProcessing() != null) {
-        switch (property.getPostProcessing()) {
-        case CONSUMPTION:
-          result.putAll(((Consumption) property.postProcessor).updateValues(value, false));
-          break;
-        case NONE:
-          break;
-        }
-      }
-      switch (property.getDataType()) {
-      case FLOAT:
-        BigDecimal bd = new BigDecimal(value);
-        property.homieProperty.send(bd.doubleValue());
-        result.put(property.getId(), bd.toPlainString());
-        return result;
-      case BOOLEAN:
-        boolean boolValue = "0".contentEquals(value);
-        if (boolValue)
-          property.homieProperty.send(Boolean.FALSE);
-        else
-          property.homieProperty.send(Boolean.TRUE);
-        result.put(property.getId(), boolValue ? "1" : "0");
-        return result;
-      case INTEGER:
-        long parseLong = new BigDecimal(value).longValue();
-        property.homieProperty.send(parseLong);
-        result.put(property.getId(), Long.toString(parseLong));
-        return result;
-      case ENUM:
-      case STRING:
-        if (!value.equals(""))
-          property.homieProperty.send(value);
-        result.put(property.getId(), escapeAndQuote(value));
-        return result;
-      default:
-        break;
-
-      }
-    } else {
-      logger.warn("Response code was not 2000 for item:" + property.getName() + " code was:" + code);
-    }
-    return null;
-  }
-
-  private static String escapeAndQuote(String value) {
-    String escaped = value.replace("\\", "\\\\").replace("\"", "\\\"");
-    return '"' + escaped + '"';
-  }
-
   public void writeDiscoveredProperties(InetSocketAddress address, List<String> endPoints, String outputFile) throws IOException {
     Set<DaikinProperty> properties = discoverProperties(address, endPoints);
     DaikinPollingSettings settings = new DaikinPollingSettings(properties);
@@ -645,41 +536,4 @@ public class Daikin implements PropertySetCallback {
     System.out.println("Wrote settings to file:" + outFile);
   }
 
-  @Override
-  public void performSet(Property property, String value) {
-    DaikinProperty daikinProperty = idToProp.get(property.getID());
-    String item = daikinProperty.getPath();
-    try {
-      synchronized (webSocketClient) {
-        if (!webSocketClient.connect(url)) {
-          logger.error("Could not connect to daikin adpater:" + url);
-          return;
-        }
-        Optional<String> response = webSocketClient.setValue(item, value);
-        pollItem(daikinProperty);
-        webSocketClient.disconnect();
-        if (response.isEmpty())
-          return;
-        JsonElement ele = JsonParser.parseString(response.get());
-        if (!ele.isJsonObject()) {
-          logger.warn("Json response is not an obj:" + response);
-          return;
-        }
-        JsonObject obj = ele.getAsJsonObject();
-        JsonElement rsp = obj.get("m2m:rsp");
-        if (rsp == null || !rsp.isJsonObject()) {
-          logger.warn("Expected a m2m:rsp Json object, but got:" + response);
-          return;
-        }
-        if (!BigDecimal.valueOf(2001).equals(rsp.getAsJsonObject().get("rsc").getAsBigDecimal())) {
-          logger.warn("Expected code 2001, but got:" + response);
-          return;
-        }
-      }
-    } catch (IOException | InterruptedException e) {
-      e.printStackTrace();
-    }
-
-  }
-
 }
@@ -0,0 +1,76 @@
+package de.karstenbecker.daikin;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The settings of a single adapter when several adapters are polled from one process. Each adapter is published as its
+ * own homie device.
+ */
+public class DaikinAdapterSettings {
+  private String daikinIP;
+  private int daikinPort = 80;
+  private String homieDeviceName;
+  private String influxQFN;
+  private List<DaikinProperty> properties = new ArrayList<>();
+
+  public DaikinAdapterSettings() {
+  }
+
+  public DaikinAdapterSettings(String daikinIP, int daikinPort, String homieDeviceName, String influxQFN, List<DaikinProperty> properties) {
+    this.daikinIP = daikinIP;
+    this.daikinPort = daikinPort;
+    this.homieDeviceName = homieDeviceName;
+    this.influxQFN = influxQFN;
+    this.properties = properties;
+  }
+
+  public String getDaikinIP() {
+    return daikinIP;
+  }
+
+  public void setDaikinIP(String daikinIP) {
+    this.daikinIP = daikinIP;
+  }
+
+  public int getDaikinPort() {
+    return daikinPort;
+  }
+
+  public void setDaikinPort(int daikinPort) {
+    this.daikinPort = daikinPort;
+  }
+
+  public String getHomieDeviceName() {
+    return homieDeviceName;
+  }
+
+  public void setHomieDeviceName(String homieDeviceName) {
+    this.homieDeviceName = homieDeviceName;
+  }
+
+  /**
+   * @return the qfn tag for the influx line, may be null if not configured
+   */
+  public String getInfluxQFN() {
+    return influxQFN;
+  }
+
+  public void setInfluxQFN(String influxQFN) {
+    this.influxQFN = influxQFN;
+  }
+
+  public List<DaikinProperty> getProperties() {
+    return properties;
+  }
+
+  public void setProperties(List<DaikinProperty> properties) {
+    this.properties = properties;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("DaikinAdapterSettings [daikinIP=%s, daikinPort=%s, homieDeviceName=%s, properties=%s]", daikinIP, daikinPort, homieDeviceName, properties.size());
+  }
+
+}
@@ -0,0 +1,812 @@
+package de.karstenbecker.daikin;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import de.karstenbecker.daikin.DaikinPollingSettings.SchedulingMode;
+import de.karstenbecker.daikin.DaikinProperty.DataType;
+import de.karstenbecker.daikin.DaikinProperty.PollingInterval;
+import de.karstenbecker.daikin.DaikinProperty.PostProcessing;
+import io.github.dschanoeh.homie_java.Configuration;
+import io.github.dschanoeh.homie_java.Homie;
+import io.github.dschanoeh.homie_java.Homie.State;
+import io.github.dschanoeh.homie_java.Node;
+import io.github.dschanoeh.homie_java.Property;
+import io.github.dschanoeh.homie_java.PropertySetCallback;
+
+/**
+ * Polls a single adapter and publishes its properties as a homie device. Several pollers can run in one process, each
+ * with its own adapter session.
+ */
+public final class DaikinPoller implements PropertySetCallback, Runnable {
+  private static final long RETRY_MS = 5000L;
+  private static final long SPREAD_THRESHOLD_MS = 60000L;
+  /** The default base topic of homie devices */
+  private static final String HOMIE_BASE_TOPIC = "homie/";
+
+  private final Logger logger;
+
+  private final DaikinPollingSettings settings;
+  private final DaikinAdapterSettings adapter;
+  private final ConsumptionCounters counters;
+  private final WebsocketHelper webSocketClient;
+  private final AdapterSession adapterSession;
+  private final Map<String, DaikinProperty> idToProp = new HashMap<>();
+  /** Bulk reads keyed by the parent container of the properties they read */
+  private final Map<String, BulkRead> bulkReads = new HashMap<>();
+  private final ThreadFactory pollThreads;
+  private final ExecutorService setTasks;
+  private final ExecutorService notifications;
+  private final InfluxLineEncoder influx;
+  /** Influx messages that could not be published yet, null if they are dropped */
+  private final PublishJournal journal;
+  private long lastReplayMillis;
+  /** The latest values for the metrics endpoint, null without the HTTP API */
+  private final MetricValues metrics;
+  private final PollerStats stats;
+  private long nextStatsMillis;
+  private Homie homie;
+
+  /**
+   * @param counters the counters for the consumption totals, null if they are disabled
+   */
+  public DaikinPoller(DaikinPollingSettings settings, DaikinAdapterSettings adapter, WebsocketHelper webSocketClient, ScheduledExecutorService scheduler,
+      ConsumptionCounters counters) {
+    this.settings = settings;
+    this.counters = counters;
+    this.adapter = adapter;
+    this.webSocketClient = webSocketClient;
+    this.logger = LoggerFactory.getLogger(DaikinPoller.class.getName() + "." + adapter.getHomieDeviceName());
+    URI url = URI.create("ws://" + adapter.getDaikinIP() + ":" + adapter.getDaikinPort() + "/mca");
+    this.adapterSession = new AdapterSession(webSocketClient, url, scheduler);
+    webSocketClient.setMaxInFlight(settings.getMaxInFlight());
+    this.stats = new PollerStats(adapterSession::getReconnects, this::getCurrentPollIntervals);
+    webSocketClient.setStats(stats);
+    this.influx = settings.getInfluxTopic() == null ? null
+        : new InfluxLineEncoder(settings.getInfluxTable(), adapter.getInfluxQFN(), settings.getInfluxBatchBytes(), settings.getInfluxBatchMillis());
+    this.metrics = settings.getApiPort() > 0 ? new MetricValues() : null;
+    this.journal = influx == null || settings.getJournalDir() == null ? null : openJournal();
+    this.pollThreads = Thread.ofVirtual().name("daikin-poll-" + adapter.getHomieDeviceName() + "-", 0).factory();
+    this.setTasks = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("daikin-set-" + adapter.getHomieDeviceName() + "-", 0).factory());
+    // A single thread, so that notifications for the same property are published in the order they arrived
+    this.notifications = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("daikin-notify-" + adapter.getHomieDeviceName()).factory());
+  }
+
+  private PublishJournal openJournal() {
+    Path dir = Path.of(settings.getJournalDir(), adapter.getHomieDeviceName());
+    try {
+      return PublishJournal.open(dir, settings.getJournalSegmentBytes());
+    } catch (IOException e) {
+      logger.error("Failed to open the journal " + dir + ", influx messages are dropped while the broker is not available", e);
+      return null;
+    }
+  }
+
+  public String getDeviceName() {
+    return adapter.getHomieDeviceName();
+  }
+
+  public List<DaikinProperty> getProperties() {
+    return adapter.getProperties();
+  }
+
+  public MetricValues getMetrics() {
+    return metrics;
+  }
+
+  public PollerStats getStats() {
+    return stats;
+  }
+
+  /**
+   * @return the time between two polls in seconds for every polled property, adaptive intervals with their current
+   *         value
+   */
+  public Map<String, Integer> getCurrentPollIntervals() {
+    Map<String, Integer> intervals = new TreeMap<>();
+    for (DaikinProperty prop : adapter.getProperties()) {
+      int interval = prop.getCurrentPollIntervalSeconds();
+      if (interval > 0)
+        intervals.put(prop.getPath(), interval);
+    }
+    return intervals;
+  }
+
+  /**
+   * Creates the homie device with all nodes and properties and connects it to the broker.
+   */
+  public void setup() {
+    Configuration config = new Configuration();
+    config.setBrokerUrl(settings.getHomieServer());
+    config.setDeviceID(adapter.getHomieDeviceName());
+    config.setDeviceName(adapter.getHomieDeviceName());
+    config.setBrokerUsername(settings.getHomieUser());
+    config.setBrokerPassword(settings.getHomiePassword());
+    if (settings.getInfluxTopic() != null) {
+      logger.warn("Logging influx to Topic:" + settings.getInfluxTopic());
+    }
+
+    homie = new Homie(config, "de.karstenbecker.daikin", "0.0.1");
+    Map<String, Node> nodes = new HashMap<>();
+    for (DaikinProperty prop : adapter.getProperties()) {
+      if (prop.getPollInterval() == PollingInterval.NEVER)
+        continue;
+      String groupName = prop.getGroupName();
+      Node node = nodes.get(groupName);
+      if (node == null) {
+        node = homie.createNode(groupName.toLowerCase(), groupName);
+        node.setName(groupName);
+        nodes.put(groupName, node);
+      }
+      Property property = node.getProperty(prop.getId());
+      property.setDataType(prop.getDataType().toHomieDataType());
+      property.setFormat(prop.getFormat());
+      property.setName(prop.getName());
+      property.setRetained(prop.getRetained());
+      property.setUnit(prop.getUnit());
+      idToProp.put(property.getID(), prop);
+      if (prop.getSettable()) {
+        property.makeSettable(this);
+      }
+      prop.homieProperty = property;
+      prop.requestFrame = RequestFrame.retrieve(prop.getPath() + "/la");
+      prop.publishFilter = PublishFilter.forProperty(prop, settings.getHeartbeatSeconds());
+      prop.adaptiveInterval = AdaptiveInterval.forProperty(prop);
+      if (settings.getHistoryPoints() > 0 && (prop.getDataType() == DataType.FLOAT || prop.getDataType() == DataType.INTEGER))
+        prop.history = new PropertyHistory(settings.getHistoryPoints(), System.currentTimeMillis());
+      if (prop.getPostProcessing() == PostProcessing.CONSUMPTION) {
+        try {
+          adapterSession.ensureConnected();
+          prop.postProcessor = Consumption.doSetup(node, property.getID(), webSocketClient.sendQuery(prop.getPath() + "/la"), counters,
+              adapter.getHomieDeviceName());
+        } catch (Exception e) {
+          logger.error("Failed to collect data for setup", e);
+        }
+      }
+    }
+    if (settings.isBulkRead()) {
+      Map<String, Integer> children = new HashMap<>();
+      for (DaikinProperty prop : adapter.getProperties()) {
+        String parent = BulkRead.parentOf(prop.getPath());
+        if (parent != null && prop.getEffectivePollIntervalSeconds() > 0)
+          children.merge(parent, 1, Integer::sum);
+      }
+      for (Entry<String, Integer> e : children.entrySet()) {
+        if (e.getValue() > 1)
+          bulkReads.put(e.getKey(), new BulkRead(e.getKey()));
+      }
+      logger.info("Reading " + bulkReads.keySet() + " with bulk reads");
+    }
+    stats.register(adapter.getHomieDeviceName());
+    homie.setup();
+  }
+
+  /**
+   * Polls the adapter until the thread is interrupted.
+   */
+  @Override
+  public void run() {
+    try {
+      // With a journal the polling continues while the broker is not available
+      if (journal == null)
+        waitForHomie(homie);
+    } catch (InterruptedException e) {
+      return;
+    }
+    int subscribedSession = -1;
+    try {
+      adapterSession.ensureConnected();
+      List<DaikinProperty> initial = new ArrayList<>();
+      for (DaikinProperty prop : adapter.getProperties()) {
+        if (prop.getPollInterval() != PollingInterval.NEVER) {
+          initial.add(prop);
+        }
+      }
+      pollItems(initial);
+      if (settings.isSubscribe() && adapterSession.ensureConnected()) {
+        subscribeAll(false);
+        subscribedSession = adapterSession.getReconnects();
+      }
+    } catch (InterruptedException e) {
+      return;
+    } catch (Exception e) {
+      logger.error("Failed to collect data", e);
+    }
+    PollScheduler<DaikinProperty> scheduler = new PollScheduler<>(System.currentTimeMillis());
+    long start = System.currentTimeMillis();
+    for (DaikinProperty prop : adapter.getProperties()) {
+      int interval = prop.getEffectivePollIntervalSeconds();
+      if (interval > 0)
+        scheduler.schedule(prop, firstDue(prop, start));
+    }
+    logger.info("Scheduled " + scheduler.size() + " properties for polling");
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        long wakeUp = scheduler.nextDueMillis();
+        if (influx != null)
+          wakeUp = Math.min(wakeUp, influx.getDeadline());
+        if (journal != null && !journal.isEmpty())
+          wakeUp = Math.min(wakeUp, lastReplayMillis + 1000);
+        if (settings.getStatsIntervalSeconds() > 0)
+          wakeUp = Math.min(wakeUp, nextStatsMillis);
+        long sleep = wakeUp - System.currentTimeMillis();
+        if (sleep > 0)
+          Thread.sleep(sleep);
+        if (journal == null)
+          waitForHomie(homie);
+        replayJournal();
+        flushInflux(false);
+        publishStats();
+        long now = System.currentTimeMillis();
+        List<PollScheduler.Entry<DaikinProperty>> due = scheduler.advance(now);
+        if (due.isEmpty())
+          continue;
+        if (!adapterSession.ensureConnected()) {
+          // The session retries with a backoff, try again a bit later
+          for (PollScheduler.Entry<DaikinProperty> entry : due) {
+            scheduler.schedule(entry.item, now + RETRY_MS);
+          }
+          continue;
+        }
+        List<DaikinProperty> dueProperties = new ArrayList<>(due.size());
+        long firstDue = now;
+        for (PollScheduler.Entry<DaikinProperty> entry : due) {
+          dueProperties.add(entry.item);
+          firstDue = Math.min(firstDue, entry.dueMillis);
+        }
+        try {
+          if (settings.isSubscribe() && subscribedSession != adapterSession.getReconnects()) {
+            // Unless this is the first subscription, notifications may have been missed while disconnected
+            subscribeAll(subscribedSession >= 0);
+            subscribedSession = adapterSession.getReconnects();
+          }
+          long cycleStart = System.nanoTime();
+          long lateness = System.currentTimeMillis() - firstDue;
+          stats.recordStage(PollerStats.Stage.LATENESS, lateness * 1_000_000L);
+          JfrEvents.PollCycle event = new JfrEvents.PollCycle();
+          event.begin();
+          addInflux(pollDue(dueProperties), System.currentTimeMillis());
+          flushInflux(false);
+          event.end();
+          stats.recordStage(PollerStats.Stage.CYCLE, System.nanoTime() - cycleStart);
+          if (event.shouldCommit()) {
+            event.device = adapter.getHomieDeviceName();
+            event.properties = dueProperties.size();
+            event.lateness = lateness;
+            event.commit();
+          }
+        } finally {
+          // Rescheduled after the poll, so that adaptive intervals already see the new value
+          for (PollScheduler.Entry<DaikinProperty> entry : due) {
+            long intervalMs = pollIntervalMillis(entry.item);
+            long next = entry.dueMillis + intervalMs;
+            // Skip polls that were missed, for example while the adapter was not reachable
+            if (next <= now)
+              next = now + intervalMs;
+            scheduler.schedule(entry.item, next);
+          }
+        }
+      } catch (InterruptedException e) {
+        break;
+      } catch (Exception e) {
+        logger.error("Failed to collect data", e);
+      }
+    }
+    logger.info("Stopping polling of " + adapter.getHomieDeviceName());
+    setTasks.shutdownNow();
+    notifications.shutdownNow();
+    flushInflux(true);
+    if (journal != null)
+      journal.close();
+    stats.unregister();
+    for (DaikinProperty prop : adapter.getProperties()) {
+      webSocketClient.unsubscribe(prop.getPath());
+      prop.subscribed = false;
+    }
+    adapterSession.close();
+  }
+
+  private void addInflux(Map<DaikinProperty, Map<String, String>> polledValues, long timestampMillis) {
+    if (influx == null)
+      return;
+    for (Map<String, String> values : polledValues.values()) {
+      if (values != null)
+        influx.add(values, timestampMillis);
+    }
+  }
+
+  /**
+   * Publishes the collected influx lines if the batch is complete.
+   *
+   * @param force publish the batch even if it is not complete
+   */
+  private synchronized void flushInflux(boolean force) {
+    if (influx == null || !(force || influx.isComplete(System.currentTimeMillis())))
+      return;
+    byte[] batch = influx.drain();
+    if (batch == null)
+      return;
+    JfrEvents.InfluxPublish event = new JfrEvents.InfluxPublish();
+    event.begin();
+    // Messages are kept in the journal until the older ones were replayed, so they arrive in order
+    if (journal != null && (!journal.isEmpty() || homie.getState() != State.READY)) {
+      journalInflux(batch);
+      commit(event, batch.length, true, false, false);
+      return;
+    }
+    if (logger.isTraceEnabled())
+      logger.trace("Posting influx message:" + new String(batch, StandardCharsets.UTF_8));
+    boolean publish = homie.publish(settings.getInfluxTopic(), new MqttMessage(batch));
+    if (!publish) {
+      if (journal != null)
+        journalInflux(batch);
+      else
+        logger.warn("Failed to post influx message with " + batch.length + " bytes");
+    }
+    commit(event, batch.length, !publish && journal != null, false, publish);
+  }
+
+  private void commit(JfrEvents.InfluxPublish event, int bytes, boolean journaled, boolean replayed, boolean success) {
+    event.end();
+    if (event.shouldCommit()) {
+      event.topic = settings.getInfluxTopic();
+      event.bytes = bytes;
+      event.journaled = journaled;
+      event.replayed = replayed;
+      event.success = success;
+      event.commit();
+    }
+  }
+
+  private void journalInflux(byte[] batch) {
+    try {
+      if (journal.isEmpty())
+        logger.warn("The broker is not available, writing influx messages to the journal");
+      journal.append(batch);
+    } catch (IOException e) {
+      logger.warn("Failed to write influx message with " + batch.length + " bytes to the journal", e);
+    }
+  }
+
+  /**
+   * Publishes the statistics as homie $stats attributes every statsIntervalSeconds.
+   */
+  private void publishStats() {
+    int interval = settings.getStatsIntervalSeconds();
+    long now = System.currentTimeMillis();
+    if (interval <= 0 || now < nextStatsMillis)
+      return;
+    nextStatsMillis = now + interval * 1000L;
+    if (homie.getState() != State.READY)
+      return;
+    String base = HOMIE_BASE_TOPIC + adapter.getHomieDeviceName() + "/$stats/";
+    for (Entry<String, String> e : stats.getHomieStats().entrySet()) {
+      MqttMessage message = new MqttMessage(e.getValue().getBytes(StandardCharsets.UTF_8));
+      message.setRetained(true);
+      homie.publish(base + e.getKey(), message);
+    }
+  }
+
+  /**
+   * Publishes the journaled influx messages in the order they were written, at most journalReplayPerSecond each second
+   * so that the broker is not flooded after an outage.
+   */
+  private synchronized void replayJournal() {
+    if (journal == null || journal.isEmpty())
+      return;
+    long now = System.currentTimeMillis();
+    if (now - lastReplayMillis < 1000)
+      return;
+    lastReplayMillis = now;
+    if (homie.getState() != State.READY)
+      return;
+    try {
+      for (int i = 0; i < settings.getJournalReplayPerSecond(); i++) {
+        byte[] message = journal.peek();
+        if (message == null)
+          break;
+        JfrEvents.InfluxPublish event = new JfrEvents.InfluxPublish();
+        event.begin();
+        boolean publish = homie.publish(settings.getInfluxTopic(), new MqttMessage(message));
+        commit(event, message.length, false, true, publish);
+        if (!publish)
+          return;
+        journal.remove();
+      }
+    } catch (IOException e) {
+      logger.warn("Failed to read the journal", e);
+      return;
+    }
+    if (journal.isEmpty())
+      logger.info("Replayed all journaled influx messages");
+    else if (logger.isDebugEnabled())
+      logger.debug(journal.getPendingMessages() + " journaled influx messages left to replay");
+  }
+
+  /**
+   * Subscribed properties are only polled at the fallback interval, the adapter pushes their changes.
+   */
+  private long pollIntervalMillis(DaikinProperty prop) {
+    int seconds = prop.getCurrentPollIntervalSeconds();
+    if (prop.subscribed)
+      seconds = Math.max(seconds, settings.getSubscriptionFallbackSeconds());
+    return seconds * 1000L;
+  }
+
+  /**
+   * Creates subscriptions for all repeatedly polled properties. This is done again after every reconnect.
+   *
+   * @param refresh read the subscribed properties once, to pick up changes whose notifications were missed while
+   *          disconnected
+   */
+  private void subscribeAll(boolean refresh) throws InterruptedException {
+    Map<DaikinProperty, CompletableFuture<Boolean>> requests = new LinkedHashMap<>();
+    for (DaikinProperty prop : adapter.getProperties()) {
+      if (prop.getEffectivePollIntervalSeconds() > 0)
+        requests.put(prop, webSocketClient.subscribeAsync(prop.getPath(), con -> notifications.submit(() -> onNotification(prop, con))));
+    }
+    List<DaikinProperty> subscribed = new ArrayList<>();
+    for (Entry<DaikinProperty, CompletableFuture<Boolean>> e : requests.entrySet()) {
+      DaikinProperty prop = e.getKey();
+      try {
+        prop.subscribed = e.getValue().get();
+      } catch (ExecutionException ex) {
+        logger.debug("Subscription for " + prop.getPath() + " failed: " + ex.getCause());
+        prop.subscribed = false;
+      }
+      if (prop.subscribed)
+        subscribed.add(prop);
+      else
+        webSocketClient.unsubscribe(prop.getPath());
+    }
+    logger.info("Subscribed to " + subscribed.size() + " of " + requests.size() + " properties, the others are polled");
+    if (refresh && !subscribed.isEmpty())
+      addInflux(pollItems(subscribed), System.currentTimeMillis());
+  }
+
+  private void onNotification(DaikinProperty prop, String con) {
+    if (logger.isDebugEnabled())
+      logger.debug("Notification for " + prop.getName() + ":" + con);
+    Map<String, String> values = processItem(prop, Optional.of(new AdapterResponse(con, null, 2000, con)));
+    if (values != null) {
+      addInflux(Map.of(prop, values), System.currentTimeMillis());
+      flushInflux(false);
+    }
+  }
+
+  /**
+   * In SPREAD mode properties with long intervals get a fixed phase within their interval, derived from their path. This
+   * way hourly and daily polls don't all fire in the same tick, and the phase stays the same across restarts.
+   */
+  private long firstDue(DaikinProperty prop, long start) {
+    long intervalMs = prop.getEffectivePollIntervalSeconds() * 1000L;
+    if (settings.getSchedulingMode() != SchedulingMode.SPREAD || intervalMs <= SPREAD_THRESHOLD_MS)
+      return start + intervalMs;
+    CRC32 crc = new CRC32();
+    crc.update(prop.getPath().getBytes(StandardCharsets.UTF_8));
+    long phase = crc.getValue() % intervalMs;
+    return Math.floorDiv(start - phase, intervalMs) * intervalMs + intervalMs + phase;
+  }
+
+  private void waitForHomie(Homie homie) throws InterruptedException {
+    while (homie.getState() != State.READY) {
+      Thread.sleep(100);
+    }
+  }
+
+  private Map<DaikinProperty, Map<String, String>> pollDue(List<DaikinProperty> dueProperties) throws InterruptedException {
+    if (logger.isDebugEnabled())
+      logger.debug("Checking " + dueProperties);
+    return pollItems(dueProperties);
+  }
+
+  /**
+   * Reads all given properties with pipelined requests, so that the adapter is kept busy instead of waiting for each
+   * round trip. With bulk reads enabled, properties that share a parent container are read with a single request.
+   */
+  private Map<DaikinProperty, Map<String, String>> pollItems(List<DaikinProperty> properties) throws InterruptedException {
+    Map<BulkRead, List<DaikinProperty>> bulk = new LinkedHashMap<>();
+    List<DaikinProperty> single = new ArrayList<>();
+    for (DaikinProperty property : properties) {
+      BulkRead read = bulkReads.get(BulkRead.parentOf(property.getPath()));
+      if (read != null && read.isSupported())
+        bulk.computeIfAbsent(read, k -> new ArrayList<>()).add(property);
+      else
+        single.add(property);
+    }
+    for (Iterator<List<DaikinProperty>> it = bulk.values().iterator(); it.hasNext();) {
+      List<DaikinProperty> members = it.next();
+      if (members.size() < 2) {
+        single.addAll(members);
+        it.remove();
+      }
+    }
+    Map<DaikinProperty, Future<Map<String, String>>> tasks = new LinkedHashMap<>();
+    Map<BulkRead, Future<Map<DaikinProperty, Map<String, String>>>> bulkTasks = new LinkedHashMap<>();
+    // Each read is done on its own virtual thread, closing the executor waits for all of them. If this thread is
+    // interrupted, the remaining reads are interrupted as well.
+    try (ExecutorService cycle = Executors.newThreadPerTaskExecutor(pollThreads)) {
+      for (Entry<BulkRead, List<DaikinProperty>> e : bulk.entrySet()) {
+        bulkTasks.put(e.getKey(), cycle.submit(() -> pollBulk(e.getKey(), e.getValue())));
+      }
+      for (DaikinProperty property : single) {
+        tasks.put(property, cycle.submit(() -> pollItem(property)));
+      }
+    }
+    if (Thread.currentThread().isInterrupted())
+      throw new InterruptedException("Poll cycle cancelled");
+    Map<DaikinProperty, Map<String, String>> result = new LinkedHashMap<>();
+    for (Entry<BulkRead, Future<Map<DaikinProperty, Map<String, String>>>> e : bulkTasks.entrySet()) {
+      Future<Map<DaikinProperty, Map<String, String>>> task = e.getValue();
+      if (task.state() == Future.State.SUCCESS)
+        result.putAll(task.resultNow());
+      else if (task.state() == Future.State.FAILED)
+        logger.warn("Failed to poll " + e.getKey().getItem(), task.exceptionNow());
+    }
+    for (Entry<DaikinProperty, Future<Map<String, String>>> e : tasks.entrySet()) {
+      Future<Map<String, String>> task = e.getValue();
+      if (task.state() == Future.State.SUCCESS)
+        result.put(e.getKey(), task.resultNow());
+      else if (task.state() == Future.State.FAILED)
+        logger.warn("Failed to poll " + e.getKey().getPath(), task.exceptionNow());
+    }
+    return result;
+  }
+
+  /**
+   * Reads the parent container with all its children and fans the contents out to the properties. Properties that are
+   * missing in the reply are read one by one. If the adapter rejects the request, the bulk read is not used again.
+   */
+  private Map<DaikinProperty, Map<String, String>> pollBulk(BulkRead bulk, List<DaikinProperty> members) throws InterruptedException {
+    AdapterResponse response = null;
+    try {
+      response = webSocketClient.retrieveAsync(bulk.getFrame()).get();
+    } catch (ExecutionException e) {
+      logger.warn("Bulk read failed for " + bulk.getItem() + ": " + e.getCause());
+    }
+    Map<String, String> contents = Map.of();
+    if (response != null && response.rsc == 2000) {
+      try {
+        contents = bulk.decode(response.message);
+      } catch (IOException e) {
+        logger.warn("Failed to decode the bulk read of " + bulk.getItem() + ": " + e.getMessage());
+        response = null;
+      }
+    }
+    if (response != null && contents.isEmpty()) {
+      logger.info("Adapter does not support bulk reads of " + bulk.getItem() + " (code " + response.rsc + "), reading its properties one by one");
+      bulk.setUnsupported();
+    }
+    Map<DaikinProperty, Map<String, String>> result = new LinkedHashMap<>();
+    for (DaikinProperty property : members) {
+      String con = contents.get(property.getPath());
+      if (con != null)
+        result.put(property, processItem(property, Optional.of(new AdapterResponse(response.message, response.rqi, 2000, con))));
+      else
+        result.put(property, pollItem(property));
+    }
+    return result;
+  }
+
+  private Map<String, String> pollItem(DaikinProperty property) throws InterruptedException {
+    JfrEvents.PollItem event = new JfrEvents.PollItem();
+    event.begin();
+    AdapterResponse response = null;
+    try {
+      response = webSocketClient.retrieveAsync(property.requestFrame).get();
+    } catch (ExecutionException e) {
+      logger.warn("Query failed for " + property.getPath() + ": " + e.getCause());
+    }
+    Map<String, String> result = processItem(property, Optional.ofNullable(response));
+    event.end();
+    if (event.shouldCommit()) {
+      event.path = property.getPath();
+      if (response != null) {
+        event.rsc = response.rsc;
+        event.valueBytes = response.con == null ? 0 : response.con.length();
+      }
+      event.published = result == null ? 0 : result.size();
+      event.commit();
+    }
+    return result;
+  }
+
+  private Map<String, String> processItem(DaikinProperty property, Optional<AdapterResponse> queryResult) {
+    long start = System.nanoTime();
+    Map<String, String> result = publishItem(property, queryResult);
+    stats.recordStage(PollerStats.Stage.PUBLISH, System.nanoTime() - start);
+    return result;
+  }
+
+  /**
+   * Publishes the value of the response to the homie property.
+   *
+   * @return the published values for influx, null if the response has no value
+   */
+  private Map<String, String> publishItem(DaikinProperty property, Optional<AdapterResponse> queryResult) {
+    Map<String, String> result = new LinkedHashMap<>();
+    if (queryResult.isEmpty()) {
+      logger.warn("failed to read " + property.getPath());
+      return null;
+    }
+    AdapterResponse response = queryResult.get();
+    int code = response.rsc;
+    if (logger.isDebugEnabled())
+      logger.debug("Obj:" + property.getName() + " " + code + " " + response.message);
+    if (code == 2000) {
+      if (response.con == null) {
+        logger.warn("Response for item:" + property.getName() + " has no content:" + response.message);
+        return null;
+      }
+      String value = response.con.strip();
+      AdaptiveInterval adaptive = property.adaptiveInterval;
+      if (adaptive != null) {
+        int before = adaptive.getSeconds();
+        int after = adaptive.update(value);
+        if (before != after && logger.isDebugEnabled())
+          logger.debug("Poll interval of " + property.getName() + " is now " + after + "s");
+      }
+      // Every read updates the metric, also when the filter suppresses publishing the value
+      if (metrics != null)
+        updateMetric(property, value);
+      if (!property.publishFilter.offer(value, System.currentTimeMillis())) {
+        logger.trace("Value of " + property.getName() + " did not change");
+        return result;
+      }
+      if (property.getPostProcessing() != null) {
+        switch (property.getPostProcessing()) {
+        case CONSUMPTION:
+          Map<String, String> slots = ((Consumption) property.postProcessor).updateValues(value, false);
+          result.putAll(slots);
+          if (metrics != null)
+            metrics.update(slots);
+          break;
+        case NONE:
+          break;
+        }
+      }
+      switch (property.getDataType()) {
+      case FLOAT:
+        double doubleValue = Double.parseDouble(value);
+        property.homieProperty.send(doubleValue);
+        if (property.history != null)
+          property.history.add(System.currentTimeMillis(), doubleValue);
+        result.put(property.getId(), value);
+        return result;
+      case BOOLEAN:
+        boolean boolValue = "0".contentEquals(value);
+        if (boolValue)
+          property.homieProperty.send(Boolean.FALSE);
+        else
+          property.homieProperty.send(Boolean.TRUE);
+        result.put(property.getId(), boolValue ? "1" : "0");
+        return result;
+      case INTEGER:
+        long parseLong = parseInteger(value);
+        property.homieProperty.send(parseLong);
+        if (property.history != null)
+          property.history.add(System.currentTimeMillis(), parseLong);
+        result.put(property.getId(), Long.toString(parseLong));
+        return result;
+      case ENUM:
+      case STRING:
+        if (!value.equals(""))
+          property.homieProperty.send(value);
+        result.put(property.getId(), InfluxLineEncoder.quote(value));
+        return result;
+      default:
+        break;
+
+      }
+    } else {
+      logger.warn("Response code was not 2000 for item:" + property.getName() + " code was:" + code);
+    }
+    return null;
+  }
+
+  private void updateMetric(DaikinProperty property, String value) {
+    try {
+      String metric = metricValue(property.getDataType(), value);
+      if (metric != null)
+        metrics.update(property.getId(), metric);
+    } catch (NumberFormatException e) {
+      logger.debug("Not a number for " + property.getName() + ":" + value);
+    }
+  }
+
+  /**
+   * @return the value as a metric sample, null if the data type is not numeric
+   * @throws NumberFormatException if the value is not a number
+   */
+  static String metricValue(DataType type, String value) {
+    switch (type) {
+    case FLOAT:
+      Double.parseDouble(value);
+      return value;
+    case INTEGER:
+      return Long.toString(parseInteger(value));
+    case BOOLEAN:
+      // Like the homie property, 0 is false and anything else true
+      return "0".contentEquals(value) ? "0" : "1";
+    default:
+      return null;
+    }
+  }
+
+  /**
+   * Parses integers without going through BigDecimal, values with a fraction are truncated.
+   */
+  private static long parseInteger(String value) {
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      return (long) Double.parseDouble(value);
+    }
+  }
+
+  @Override
+  public void performSet(Property property, String value) {
+    DaikinProperty daikinProperty = idToProp.get(property.getID());
+    String item = daikinProperty.getPath();
+    // Do not block the MQTT callback thread, connecting, the set and the read back run on a virtual thread
+    setTasks.submit(() -> {
+      if (!adapterSession.ensureConnected()) {
+        logger.error("Could not set " + item + ", daikin adapter is not connected:" + adapterSession.getUrl());
+        return;
+      }
+      JfrEvents.SetValue event = new JfrEvents.SetValue();
+      event.begin();
+      try {
+        JsonObject rsp = webSocketClient.setValueAsync(item, value).get();
+        JsonElement rsc = rsp.get("rsc");
+        if (rsc == null || !rsc.isJsonPrimitive()) {
+          logger.warn("Reply to setting " + item + " has no rsc:" + rsp);
+          return;
+        }
+        event.rsc = rsc.getAsInt();
+        if (event.rsc != 2001) {
+          logger.warn("Expected code 2001, but got:" + rsp);
+        }
+        pollItem(daikinProperty);
+      } catch (ExecutionException e) {
+        logger.warn("Failed to set " + item + " to " + value + ": " + e.getCause().getMessage());
+      } catch (InterruptedException e) {
+        logger.debug("Set of " + item + " was cancelled");
+      } finally {
+        event.end();
+        if (event.shouldCommit()) {
+          event.path = item;
+          event.value = value;
+          event.commit();
+        }
+      }
+    });
+  }
+
+}
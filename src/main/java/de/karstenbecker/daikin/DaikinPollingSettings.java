@@ -17,6 +17,13 @@ import de.karstenbecker.daikin.DaikinProperty.PollingInterval;
 import de.karstenbecker.daikin.DaikinProperty.PostProcessing;
 
 public class DaikinPollingSettings {
+	public enum SchedulingMode {
+		/** All properties are polled relative to the start of the polling */
+		ALIGNED,
+		/** Properties with intervals longer than a minute are spread evenly across their interval */
+		SPREAD
+	}
+
 	private String homieServer = "tcp://127.0.0.1:1883";
 	private String homieUser = null;
 	private String homiePassword = null;
@@ -24,9 +31,25 @@ public class DaikinPollingSettings {
 	private String daikinIP;
 	private int daikinPort = 80;
 	private List<DaikinProperty> properties = new ArrayList<>();
+	private List<DaikinAdapterSettings> adapters = new ArrayList<>();
   private String influxTopic;
   private String influxTable="Daikin";
   private String influxQFN="OpenHab.daikin.Heating";
+  private int maxInFlight = WebsocketHelper.DEFAULT_MAX_IN_FLIGHT;
+  private SchedulingMode schedulingMode = SchedulingMode.ALIGNED;
+  private int heartbeatSeconds = 0;
+  private boolean subscribe = false;
+  private int subscriptionFallbackSeconds = 3600;
+  private boolean bulkRead = false;
+  private String consumptionStateFile = null;
+  private int influxBatchBytes = 0;
+  private int influxBatchMillis = 0;
+  private String journalDir = null;
+  private int journalSegmentBytes = 1 << 20;
+  private int journalReplayPerSecond = 50;
+  private int historyPoints = 0;
+  private int apiPort = 0;
+  private int statsIntervalSeconds = 0;
 
 	public DaikinPollingSettings(Collection<DaikinProperty> properties) {
 		super();
@@ -93,10 +116,44 @@ public class DaikinPollingSettings {
 		this.properties = properties;
 	}
 
+	/**
+	 * Returns the adapters to poll. If no adapters list is configured, the top level IP, device name and properties form
+	 * the only adapter.
+	 */
+	public List<DaikinAdapterSettings> getAdapters() {
+		if (adapters == null || adapters.isEmpty()) {
+			return List.of(new DaikinAdapterSettings(daikinIP, daikinPort, homieDeviceName, influxQFN, properties));
+		}
+		return adapters;
+	}
+
+	/**
+	 * Checks the configured adapters and fills in the defaults they take from the top level.
+	 *
+	 * @throws IllegalArgumentException if an adapter has no homie device name
+	 */
+	void applyAdapterDefaults() {
+		if (adapters == null)
+			return;
+		for (DaikinAdapterSettings adapter : adapters) {
+			if (adapter.getHomieDeviceName() == null || adapter.getHomieDeviceName().isBlank())
+				throw new IllegalArgumentException("The adapter " + adapter.getDaikinIP() + " has no homieDeviceName");
+			if (adapter.getInfluxQFN() == null) {
+				// Keep the influx series of the adapters apart
+				adapter.setInfluxQFN(influxQFN + "." + adapter.getHomieDeviceName());
+			}
+		}
+	}
+
+	public void setAdapters(List<DaikinAdapterSettings> adapters) {
+		this.adapters = adapters;
+	}
+
 	public String toJSON(boolean includeValues) {
 		GsonBuilder gson = new GsonBuilder().setPrettyPrinting()
 		    .registerTypeAdapterFactory(new EnumDefaultValueTypeAdapterFactory<>(PollingInterval.class, PollingInterval.NEVER))
 		    .registerTypeAdapterFactory(new EnumDefaultValueTypeAdapterFactory<>(PostProcessing.class, PostProcessing.NONE))
+		    .registerTypeAdapterFactory(new EnumDefaultValueTypeAdapterFactory<>(SchedulingMode.class, SchedulingMode.ALIGNED))
 		    ;
 		if (!includeValues) {
 			gson.setExclusionStrategies(new ExclusionStrategy() {
@@ -120,7 +177,9 @@ public class DaikinPollingSettings {
 	public static DaikinPollingSettings fromFile(File file) throws IOException {
 		Gson gson = new GsonBuilder().create();
 		String json = Files.readString(file.toPath());
-		return gson.fromJson(json, DaikinPollingSettings.class);
+		DaikinPollingSettings settings = gson.fromJson(json, DaikinPollingSettings.class);
+		settings.applyAdapterDefaults();
+		return settings;
 	}
 
   public String getInfluxTopic() {
@@ -139,4 +198,161 @@ public class DaikinPollingSettings {
     return influxQFN;
   }
 
+  public int getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  public void setMaxInFlight(int maxInFlight) {
+    this.maxInFlight = maxInFlight;
+  }
+
+  public SchedulingMode getSchedulingMode() {
+    return schedulingMode == null ? SchedulingMode.ALIGNED : schedulingMode;
+  }
+
+  public void setSchedulingMode(SchedulingMode schedulingMode) {
+    this.schedulingMode = schedulingMode;
+  }
+
+  /**
+   * @return how long an unchanged value is suppressed before it is published again, 0 publishes every poll
+   */
+  public int getHeartbeatSeconds() {
+    return heartbeatSeconds;
+  }
+
+  public void setHeartbeatSeconds(int heartbeatSeconds) {
+    this.heartbeatSeconds = heartbeatSeconds;
+  }
+
+  /**
+   * @return true if the adapter should push changes through oneM2M subscriptions, polling is then only a fallback
+   */
+  public boolean isSubscribe() {
+    return subscribe;
+  }
+
+  public void setSubscribe(boolean subscribe) {
+    this.subscribe = subscribe;
+  }
+
+  /**
+   * @return the longest time between two polls of a subscribed property, in case notifications were lost
+   */
+  public int getSubscriptionFallbackSeconds() {
+    return subscriptionFallbackSeconds;
+  }
+
+  public void setSubscriptionFallbackSeconds(int subscriptionFallbackSeconds) {
+    this.subscriptionFallbackSeconds = subscriptionFallbackSeconds;
+  }
+
+  /**
+   * @return true if properties that share a parent container should be read with a single request
+   */
+  public boolean isBulkRead() {
+    return bulkRead;
+  }
+
+  public void setBulkRead(boolean bulkRead) {
+    this.bulkRead = bulkRead;
+  }
+
+  /**
+   * @return the file that keeps the consumption totals across restarts, null disables the totals
+   */
+  public String getConsumptionStateFile() {
+    return consumptionStateFile;
+  }
+
+  public void setConsumptionStateFile(String consumptionStateFile) {
+    this.consumptionStateFile = consumptionStateFile;
+  }
+
+  /**
+   * @return the size in bytes after which collected influx lines are published, 0 publishes every poll
+   */
+  public int getInfluxBatchBytes() {
+    return influxBatchBytes;
+  }
+
+  public void setInfluxBatchBytes(int influxBatchBytes) {
+    this.influxBatchBytes = influxBatchBytes;
+  }
+
+  /**
+   * @return the time in ms after which collected influx lines are published, 0 publishes every poll
+   */
+  public int getInfluxBatchMillis() {
+    return influxBatchMillis;
+  }
+
+  public void setInfluxBatchMillis(int influxBatchMillis) {
+    this.influxBatchMillis = influxBatchMillis;
+  }
+
+  /**
+   * @return the directory of the journal that keeps influx messages while the broker is not available, null if they are
+   *         dropped
+   */
+  public String getJournalDir() {
+    return journalDir;
+  }
+
+  public void setJournalDir(String journalDir) {
+    this.journalDir = journalDir;
+  }
+
+  public int getJournalSegmentBytes() {
+    return journalSegmentBytes;
+  }
+
+  public void setJournalSegmentBytes(int journalSegmentBytes) {
+    this.journalSegmentBytes = journalSegmentBytes;
+  }
+
+  /**
+   * @return the number of journaled influx messages that are published per second once the broker is available again
+   */
+  public int getJournalReplayPerSecond() {
+    return journalReplayPerSecond;
+  }
+
+  public void setJournalReplayPerSecond(int journalReplayPerSecond) {
+    this.journalReplayPerSecond = journalReplayPerSecond;
+  }
+
+  /**
+   * @return the number of values kept in the history of each numeric property, 0 if no history is kept
+   */
+  public int getHistoryPoints() {
+    return historyPoints;
+  }
+
+  public void setHistoryPoints(int historyPoints) {
+    this.historyPoints = historyPoints;
+  }
+
+  /**
+   * @return the port of the HTTP API, 0 if it is disabled
+   */
+  public int getApiPort() {
+    return apiPort;
+  }
+
+  public void setApiPort(int apiPort) {
+    this.apiPort = apiPort;
+  }
+
+  /**
+   * @return the interval of publishing the request statistics as homie $stats attributes, 0 if they are not published
+   */
+  public int getStatsIntervalSeconds() {
+    return statsIntervalSeconds;
+  }
+
+  public void setStatsIntervalSeconds(int statsIntervalSeconds) {
+    this.statsIntervalSeconds = statsIntervalSeconds;
+  }
+
 }
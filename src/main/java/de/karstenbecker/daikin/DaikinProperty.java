@@ -7,7 +7,14 @@ import io.github.dschanoeh.homie_java.Property;
 public class DaikinProperty implements Comparable<DaikinProperty> {
 
   public enum PollingInterval {
-    NEVER, ONCE, DAILY, BI_HOURLY, HOURLY, MINUTELY;
+    NEVER(0), ONCE(0), DAILY(24 * 3600), BI_HOURLY(2 * 3600), HOURLY(3600), MINUTELY(60);
+
+    /** The time between two polls, 0 if the property is not polled repeatedly */
+    public final int seconds;
+
+    PollingInterval(int seconds) {
+      this.seconds = seconds;
+    }
   }
 
   public enum PostProcessing {
@@ -43,10 +50,23 @@ public class DaikinProperty implements Comparable<DaikinProperty> {
   private String unit = "";
   private String format = "";
   private PollingInterval pollInterval = PollingInterval.HOURLY;
+  private Integer pollIntervalSeconds;
   private DataType dataType = DataType.STRING;
   private PostProcessing postProcessing = PostProcessing.NONE;
+  private Double deadbandAbsolute;
+  private Double deadbandRelative;
+  private Integer maxSilenceSeconds;
+  private Integer adaptiveMinSeconds;
+  private Integer adaptiveMaxSeconds;
   public transient Property homieProperty;
   public transient Object postProcessor;
+  public transient RequestFrame requestFrame;
+  public transient PublishFilter publishFilter;
+  public transient AdaptiveInterval adaptiveInterval;
+  /** The recent values, null if no history is kept */
+  public transient PropertyHistory history;
+  /** True while the adapter pushes changes of this property */
+  public transient volatile boolean subscribed;
 
   public DaikinProperty(String path, String groupName) {
     this.path = path;
@@ -122,6 +142,95 @@ public class DaikinProperty implements Comparable<DaikinProperty> {
     this.pollInterval = pollInterval;
   }
 
+  /**
+   * @return an interval in seconds that overrides the pollInterval, or null if the pollInterval is used
+   */
+  public Integer getPollIntervalSeconds() {
+    return pollIntervalSeconds;
+  }
+
+  public void setPollIntervalSeconds(Integer pollIntervalSeconds) {
+    this.pollIntervalSeconds = pollIntervalSeconds;
+  }
+
+  /**
+   * @return the time between two polls in seconds, 0 if the property is only read once or never
+   */
+  public int getEffectivePollIntervalSeconds() {
+    if (pollInterval == null || pollInterval == PollingInterval.NEVER)
+      return 0;
+    if (pollIntervalSeconds != null && pollIntervalSeconds > 0)
+      return pollIntervalSeconds;
+    return pollInterval.seconds;
+  }
+
+  /**
+   * @return the absolute change a FLOAT or INTEGER value needs before it is published again, or null
+   */
+  public Double getDeadbandAbsolute() {
+    return deadbandAbsolute;
+  }
+
+  public void setDeadbandAbsolute(Double deadbandAbsolute) {
+    this.deadbandAbsolute = deadbandAbsolute;
+  }
+
+  /**
+   * @return the change relative to the last published value (0.01 is 1%) needed before it is published again, or null
+   */
+  public Double getDeadbandRelative() {
+    return deadbandRelative;
+  }
+
+  public void setDeadbandRelative(Double deadbandRelative) {
+    this.deadbandRelative = deadbandRelative;
+  }
+
+  /**
+   * @return the time after which a value is published even if it did not leave the deadband, or null to use the
+   *         heartbeatSeconds of the settings
+   */
+  public Integer getMaxSilenceSeconds() {
+    return maxSilenceSeconds;
+  }
+
+  public void setMaxSilenceSeconds(Integer maxSilenceSeconds) {
+    this.maxSilenceSeconds = maxSilenceSeconds;
+  }
+
+  /**
+   * @return the shortest interval in adaptive polling mode, or null. Adaptive polling is used if either the minimum or
+   *         the maximum is set, the pollInterval is where it starts.
+   */
+  public Integer getAdaptiveMinSeconds() {
+    return adaptiveMinSeconds;
+  }
+
+  public void setAdaptiveMinSeconds(Integer adaptiveMinSeconds) {
+    this.adaptiveMinSeconds = adaptiveMinSeconds;
+  }
+
+  /**
+   * @return the longest interval in adaptive polling mode, or null
+   */
+  public Integer getAdaptiveMaxSeconds() {
+    return adaptiveMaxSeconds;
+  }
+
+  public void setAdaptiveMaxSeconds(Integer adaptiveMaxSeconds) {
+    this.adaptiveMaxSeconds = adaptiveMaxSeconds;
+  }
+
+  /**
+   * @return the time until the next poll in seconds, this differs from the effective interval in adaptive mode
+   */
+  public int getCurrentPollIntervalSeconds() {
+    AdaptiveInterval adaptive = adaptiveInterval;
+    if (adaptive != null)
+      return adaptive.getSeconds();
+    return getEffectivePollIntervalSeconds();
+  }
+
   public DataType getDataType() {
     return dataType;
   }
@@ -157,8 +266,9 @@ public class DaikinProperty implements Comparable<DaikinProperty> {
 
   @Override
   public String toString() {
-    return String.format("DaikinProperty [path=%s, name=%s, id=%s, value=%s, settable=%s, retained=%s, unit=%s, format=%s, pollInterval=%s, dataType=%s]", path, name, getId(), value, settable,
-        retained, unit, format, pollInterval, dataType);
+    return String.format("DaikinProperty [path=%s, name=%s, id=%s, value=%s, settable=%s, retained=%s, unit=%s, format=%s, pollInterval=%s, pollIntervalSeconds=%s, dataType=%s, deadbandAbsolute=%s, deadbandRelative=%s, maxSilenceSeconds=%s, adaptiveMinSeconds=%s, adaptiveMaxSeconds=%s]", path, name, getId(), value,
+        settable, retained, unit, format, pollInterval, pollIntervalSeconds, dataType, deadbandAbsolute, deadbandRelative, maxSilenceSeconds,
+        adaptiveMinSeconds, adaptiveMaxSeconds);
   }
 
   public PostProcessing getPostProcessing() {
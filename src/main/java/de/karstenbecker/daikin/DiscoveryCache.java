@@ -0,0 +1,94 @@
+package de.karstenbecker.daikin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import de.karstenbecker.daikin.Daikin.DaikinInformation;
+
+/**
+ * Remembers the replies of discovery probes, so that scanning a known unit again does not need to probe every endpoint.
+ * The replies are kept per unit id, firmware and software version, because only a firmware update can change which
+ * endpoints exist. Negative replies (4004) are cached as well, timeouts are not.
+ */
+public class DiscoveryCache {
+  public static final String DEFAULT_FILE = "DiscoveryCache.json";
+
+  private static final Logger logger = LoggerFactory.getLogger(DiscoveryCache.class);
+
+  private final transient File file;
+  /** The rsc and pc of every probed item, keyed by unit and item */
+  private Map<String, Map<String, JsonObject>> units = new TreeMap<>();
+
+  private DiscoveryCache(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Reads the cache from the file. If the file does not exist or can not be read, the cache starts empty.
+   */
+  public static DiscoveryCache load(File file) {
+    DiscoveryCache cache = new DiscoveryCache(file);
+    if (!file.exists())
+      return cache;
+    try {
+      DiscoveryCache read = new Gson().fromJson(Files.readString(file.toPath()), DiscoveryCache.class);
+      if (read != null && read.units != null)
+        cache.units = new TreeMap<>(read.units);
+    } catch (IOException | JsonParseException e) {
+      logger.warn("Ignoring discovery cache " + file + " that could not be read: " + e.getMessage());
+    }
+    return cache;
+  }
+
+  private static String key(DaikinInformation information) {
+    return information.id + "/" + information.firmware + "/" + information.software;
+  }
+
+  /**
+   * @return the cached replies of the unit keyed by item, changes to the map are saved with {@link #save()}
+   */
+  public synchronized Map<String, JsonObject> forUnit(DaikinInformation information) {
+    return units.computeIfAbsent(key(information), k -> new TreeMap<>());
+  }
+
+  /**
+   * Drops everything known about the unit, so that the next discovery probes all endpoints again.
+   */
+  public synchronized void invalidate(DaikinInformation information) {
+    units.remove(key(information));
+  }
+
+  /**
+   * Strips the m2m:rsp down to the parts that discovery looks at. Only found (2000) and not found (4004) replies are
+   * cached, for any other reply null is returned so that the item is probed again next time.
+   */
+  public static JsonObject toCacheEntry(JsonObject rsp) {
+    JsonElement rsc = rsp.get("rsc");
+    if (rsc == null || !rsc.isJsonPrimitive() || (rsc.getAsInt() != 2000 && rsc.getAsInt() != 4004))
+      return null;
+    JsonObject entry = new JsonObject();
+    entry.add("rsc", rsc);
+    JsonElement pc = rsp.get("pc");
+    if (pc != null)
+      entry.add("pc", pc);
+    return entry;
+  }
+
+  public synchronized void save() throws IOException {
+    Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    Files.writeString(file.toPath(), gson.toJson(this));
+  }
+
+}
@@ -0,0 +1,199 @@
+package de.karstenbecker.daikin;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Plans the probes for the discovery of one group. The UnitProfile is probed level by level: the group itself is only
+ * a container and is not probed, the nodes below a node that carries content only describe its values and are
+ * skipped, and so are the nodes below a node that did not answer at all. Nodes without content, for example 4004, are
+ * containers and their children are probed. Endpoints from the endpoint list are probed alongside, except the ones
+ * that match a profile node ignoring case. Those wait until the profile was walked and are only probed if the profile
+ * node was not found, as it may not have been probed or may be spelled differently by the adapter. Of several endpoints
+ * that only differ in case the first one is probed, the next only if it was not found.
+ */
+public class DiscoveryPlanner {
+
+  /**
+   * A node of the UnitProfile, the item is the path that is probed for it.
+   */
+  static final class Probe {
+    final String item;
+    final JsonElement profileNode;
+    final List<Probe> children = new ArrayList<>();
+    boolean probed = false;
+
+    Probe(String item, JsonElement profileNode) {
+      this.item = item;
+      this.profileNode = profileNode;
+    }
+  }
+
+  private final Probe root;
+  private final List<Probe> probes = new ArrayList<>();
+  /** Endpoints that differ only in case, keyed by the lower case item */
+  private final Map<String, List<String>> endpointVariants = new LinkedHashMap<>();
+  /** The lower case items of the endpoints that match a profile node */
+  private final Set<String> deferredEndpoints = new LinkedHashSet<>();
+  private final List<String> probedEndpoints = new ArrayList<>();
+  private final int naiveRequests;
+  private int requests = 0;
+
+  /**
+   * @param endpoints the endpoints of the endpoint list including the group, for example {@code 1/Sensor/IndoorTemperature}
+   */
+  public DiscoveryPlanner(String group, JsonObject profile, List<String> endpoints) {
+    root = collect(profile, group);
+    Set<String> profileItems = new HashSet<>();
+    for (Probe probe : probes) {
+      profileItems.add(probe.item.toLowerCase(Locale.ROOT));
+    }
+    for (String endpoint : endpoints) {
+      String key = endpoint.toLowerCase(Locale.ROOT);
+      if (profileItems.contains(key))
+        deferredEndpoints.add(key);
+      List<String> variants = endpointVariants.computeIfAbsent(key, k -> new ArrayList<>());
+      if (!variants.contains(endpoint))
+        variants.add(endpoint);
+    }
+    // Without planning every profile node and every endpoint is probed
+    naiveRequests = probes.size() + endpoints.size();
+  }
+
+  /**
+   * Walks the UnitProfile and collects the nodes in the order they are processed.
+   */
+  private Probe collect(JsonElement node, String item) {
+    if (node.isJsonPrimitive()) {
+      item += Daikin.ITEM_SEP + node.getAsString();
+    }
+    Probe probe = new Probe(item, node);
+    probes.add(probe);
+    if (node.isJsonArray()) {
+      JsonArray array = node.getAsJsonArray();
+      for (JsonElement ele : array) {
+        probe.children.add(collect(ele, item));
+      }
+    } else if (node.isJsonObject()) {
+      JsonObject obj = node.getAsJsonObject();
+      for (String key : obj.keySet()) {
+        probe.children.add(collect(obj.get(key), item + Daikin.ITEM_SEP + key));
+      }
+    }
+    return probe;
+  }
+
+  /**
+   * Probes the planned items. Each round is passed to the query function at once, it returns the m2m:rsp for each item,
+   * empty if there was no reply.
+   *
+   * @return the replies keyed by the probed item including {@code /la}
+   */
+  public Map<String, Optional<JsonObject>> run(Function<Collection<String>, Map<String, Optional<JsonObject>>> query) {
+    Map<String, Optional<JsonObject>> replies = new HashMap<>();
+    List<Probe> frontier = new ArrayList<>(root.children);
+    Map<String, Integer> nextVariant = new LinkedHashMap<>();
+    for (String key : endpointVariants.keySet()) {
+      if (!deferredEndpoints.contains(key))
+        nextVariant.put(key, 0);
+    }
+    // The lower case items of the profile nodes that were found
+    Set<String> found = new HashSet<>();
+    boolean deferred = !deferredEndpoints.isEmpty();
+    while (true) {
+      if (frontier.isEmpty() && deferred) {
+        for (String key : deferredEndpoints) {
+          if (!found.contains(key))
+            nextVariant.put(key, 0);
+        }
+        deferred = false;
+      }
+      if (frontier.isEmpty() && nextVariant.isEmpty())
+        break;
+      Set<String> items = new LinkedHashSet<>();
+      for (Probe probe : frontier) {
+        if (!replies.containsKey(probe.item + "/la"))
+          items.add(probe.item + "/la");
+      }
+      for (Map.Entry<String, Integer> e : nextVariant.entrySet()) {
+        String endpoint = endpointVariants.get(e.getKey()).get(e.getValue());
+        if (!replies.containsKey(endpoint + "/la"))
+          items.add(endpoint + "/la");
+      }
+      requests += items.size();
+      replies.putAll(query.apply(items));
+
+      List<Probe> next = new ArrayList<>();
+      for (Probe probe : frontier) {
+        probe.probed = true;
+        // Only containers without content are structural, the values are below them
+        int code = rsc(replies.get(probe.item + "/la"));
+        if (code == 2000)
+          found.add(probe.item.toLowerCase(Locale.ROOT));
+        else if (code != -1)
+          next.addAll(probe.children);
+      }
+      frontier = next;
+      for (String key : new ArrayList<>(nextVariant.keySet())) {
+        int variant = nextVariant.get(key);
+        List<String> variants = endpointVariants.get(key);
+        String endpoint = variants.get(variant);
+        probedEndpoints.add(endpoint);
+        if (rsc(replies.get(endpoint + "/la")) == 4004 && variant + 1 < variants.size())
+          nextVariant.put(key, variant + 1);
+        else
+          nextVariant.remove(key);
+      }
+    }
+    return replies;
+  }
+
+  private static int rsc(Optional<JsonObject> reply) {
+    if (reply == null || reply.isEmpty() || !reply.get().has("rsc"))
+      return -1;
+    return reply.get().get("rsc").getAsInt();
+  }
+
+  /**
+   * @return all nodes of the profile in the order of the profile, check {@link Probe#probed} for the ones with a reply
+   */
+  List<Probe> getProbes() {
+    return probes;
+  }
+
+  /**
+   * @return the endpoints that were probed, in the order they were probed
+   */
+  public List<String> getProbedEndpoints() {
+    return probedEndpoints;
+  }
+
+  /**
+   * @return the number of probes that would have been sent without planning
+   */
+  public int getNaiveRequests() {
+    return naiveRequests;
+  }
+
+  /**
+   * @return the number of probes that were sent, including the ones answered by the discovery cache
+   */
+  public int getRequests() {
+    return requests;
+  }
+
+}
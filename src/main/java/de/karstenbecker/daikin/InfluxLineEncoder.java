@@ -0,0 +1,189 @@
+package de.karstenbecker.daikin;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Encodes polled values as InfluxDB line protocol into a reused byte buffer. Values that share a timestamp are written as
+ * one line, several lines are collected until the batch exceeds a size or age limit. Measurement, tag and field keys
+ * are escaped while they are written, field values are expected to be valid line protocol already, see
+ * {@link #quote(String)} for strings.
+ */
+@NonNullByDefault
+public class InfluxLineEncoder {
+  private final byte[] prefix;
+  private final int maxBytes;
+  private final long maxDelayMillis;
+
+  private byte[] buffer = new byte[4096];
+  private int length = 0;
+  /** The timestamp of the line that is currently written, -1 if there is none */
+  private long lineMillis = -1;
+  /** The position of the timestamp of the current line, it is moved back when a field is appended */
+  private int lineEnd = 0;
+  private long firstLineAt = -1;
+
+  /**
+   * A bound that is 0 or less is not used. If neither is used, every line completes the batch.
+   *
+   * @param maxBytes a batch is complete once it is larger
+   * @param maxDelayMillis a batch is complete once its first line is older
+   */
+  public InfluxLineEncoder(String measurement, String qfn, int maxBytes, long maxDelayMillis) {
+    this.maxBytes = maxBytes;
+    this.maxDelayMillis = maxDelayMillis;
+    int pos = writeEscaped(measurement, ESCAPE_MEASUREMENT, 0);
+    pos = writeEscaped(",", "", pos);
+    pos = writeEscaped("qfn", ESCAPE_KEY, pos);
+    pos = writeEscaped("=", "", pos);
+    pos = writeEscaped(qfn, ESCAPE_KEY, pos);
+    prefix = Arrays.copyOf(buffer, pos);
+  }
+
+  private static final String ESCAPE_MEASUREMENT = ", ";
+  private static final String ESCAPE_KEY = ",= ";
+
+  /**
+   * Adds the fields to the batch, fields with a null value are skipped. If the last line has the same timestamp, the
+   * fields are appended to it.
+   */
+  public synchronized void add(Map<String, String> fields, long timestampMillis) {
+    for (Entry<String, String> field : fields.entrySet()) {
+      String value = field.getValue();
+      if (value != null)
+        addField(field.getKey(), value, timestampMillis);
+    }
+  }
+
+  public synchronized void addField(String key, String value, long timestampMillis) {
+    if (lineMillis != timestampMillis || length == 0) {
+      ensure(length, prefix.length + 2);
+      if (length > 0)
+        buffer[length++] = '\n';
+      else
+        firstLineAt = System.currentTimeMillis();
+      System.arraycopy(prefix, 0, buffer, length, prefix.length);
+      length += prefix.length;
+      buffer[length++] = ' ';
+      lineMillis = timestampMillis;
+    } else {
+      // Drop the timestamp of the line and continue its field set
+      length = lineEnd;
+      buffer[length++] = ',';
+    }
+    length = writeEscaped(key, ESCAPE_KEY, length);
+    length = writeEscaped("=", "", length);
+    length = writeEscaped(value, "", length);
+    lineEnd = length;
+    ensure(length, 21);
+    buffer[length++] = ' ';
+    length = writeLong(timestampMillis * 1000000L, length);
+  }
+
+  /**
+   * @return true if the batch should be sent
+   */
+  public synchronized boolean isComplete(long now) {
+    if (length == 0)
+      return false;
+    if (maxBytes <= 0 && maxDelayMillis <= 0)
+      return true;
+    return (maxBytes > 0 && length >= maxBytes) || (maxDelayMillis > 0 && now - firstLineAt >= maxDelayMillis);
+  }
+
+  /**
+   * @return the time at which the current batch is complete because of its age, Long.MAX_VALUE if the batch is empty or
+   *         has no age limit
+   */
+  public synchronized long getDeadline() {
+    if (length == 0)
+      return Long.MAX_VALUE;
+    if (maxDelayMillis <= 0)
+      return maxBytes <= 0 ? firstLineAt : Long.MAX_VALUE;
+    return firstLineAt + maxDelayMillis;
+  }
+
+  /**
+   * @return a copy of the batch, or null if it is empty. The buffer is kept for the next batch.
+   */
+  @Nullable
+  public synchronized byte[] drain() {
+    if (length == 0)
+      return null;
+    byte[] batch = Arrays.copyOf(buffer, length);
+    length = 0;
+    lineMillis = -1;
+    firstLineAt = -1;
+    return batch;
+  }
+
+  /**
+   * Quotes a string field value, escaping quotes and backslashes.
+   */
+  public static String quote(String value) {
+    StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\')
+        sb.append('\\');
+      sb.append(c);
+    }
+    return sb.append('"').toString();
+  }
+
+  private void ensure(int pos, int bytes) {
+    if (pos + bytes > buffer.length)
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, pos + bytes));
+  }
+
+  /**
+   * Writes the string as UTF-8, with a backslash before every character in escape.
+   */
+  private int writeEscaped(String s, String escape, int pos) {
+    int len = s.length();
+    for (int i = 0; i < len; i++) {
+      char c = s.charAt(i);
+      // An escaped character needs at most 5 bytes
+      ensure(pos, 5);
+      if (escape.indexOf(c) >= 0)
+        buffer[pos++] = '\\';
+      if (c < 0x80) {
+        buffer[pos++] = (byte) c;
+      } else if (c < 0x800) {
+        buffer[pos++] = (byte) (0xc0 | (c >> 6));
+        buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, s.charAt(++i));
+        buffer[pos++] = (byte) (0xf0 | (cp >> 18));
+        buffer[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+        buffer[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+        buffer[pos++] = (byte) (0x80 | (cp & 0x3f));
+      } else {
+        buffer[pos++] = (byte) (0xe0 | (c >> 12));
+        buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+    return pos;
+  }
+
+  private int writeLong(long value, int pos) {
+    if (value < 0) {
+      buffer[pos++] = '-';
+      value = -value;
+    }
+    int digits = 1;
+    for (long v = value / 10; v > 0; v /= 10)
+      digits++;
+    for (int i = pos + digits - 1; i >= pos; i--) {
+      buffer[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    return pos + digits;
+  }
+
+}
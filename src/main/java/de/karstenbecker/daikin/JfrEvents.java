@@ -0,0 +1,136 @@
+package de.karstenbecker.daikin;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events of the polling service, shown in the Daikin category of JMC or with
+ * {@code jfr print --categories Daikin}. While no recording is running the events are not created at all or their
+ * commit is a no-op.
+ */
+final class JfrEvents {
+  private static final String CATEGORY = "Daikin";
+
+  private JfrEvents() {
+  }
+
+  @Name("de.karstenbecker.daikin.AdapterRequest")
+  @Label("Adapter Request")
+  @Description("A request to the adapter, from submitting it until the reply, the timeout or the failure")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  static final class AdapterRequest extends Event {
+    private static final EventType TYPE = EventType.getEventType(AdapterRequest.class);
+
+    @Label("Target")
+    String target;
+    @Label("Result Code")
+    int rsc;
+    @Label("Outcome")
+    String outcome;
+    @Label("Request Size")
+    @DataAmount
+    long requestBytes;
+    @Label("Reply Size")
+    @DataAmount
+    long replyBytes;
+    @Label("Queued")
+    @Description("Time spent waiting for room in the in-flight window")
+    @Timespan(Timespan.NANOSECONDS)
+    long queued;
+
+    /**
+     * Checked before creating the event, as it lives until the reply arrives.
+     */
+    static boolean isRecording() {
+      return TYPE.isEnabled();
+    }
+  }
+
+  @Name("de.karstenbecker.daikin.PollItem")
+  @Label("Poll Item")
+  @Description("Reading and publishing a single property")
+  @Category(CATEGORY)
+  static final class PollItem extends Event {
+    @Label("Path")
+    String path;
+    @Label("Result Code")
+    int rsc;
+    @Label("Value Size")
+    @DataAmount
+    long valueBytes;
+    @Label("Published Values")
+    int published;
+  }
+
+  @Name("de.karstenbecker.daikin.PollCycle")
+  @Label("Poll Cycle")
+  @Description("A poll of all properties that were due at the same time")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  static final class PollCycle extends Event {
+    @Label("Device")
+    String device;
+    @Label("Properties")
+    int properties;
+    @Label("Lateness")
+    @Description("How much later than scheduled the cycle started")
+    @Timespan(Timespan.MILLISECONDS)
+    long lateness;
+  }
+
+  @Name("de.karstenbecker.daikin.ConsumptionUpdate")
+  @Label("Consumption Update")
+  @Description("Parsing a consumption reply and publishing the changed slots")
+  @Category(CATEGORY)
+  static final class ConsumptionUpdate extends Event {
+    @Label("Property")
+    String property;
+    @Label("Json Size")
+    @DataAmount
+    long jsonBytes;
+    @Label("Series")
+    int series;
+    @Label("Changed Values")
+    int changed;
+  }
+
+  @Name("de.karstenbecker.daikin.SetValue")
+  @Label("Set Value")
+  @Description("Setting a value on the adapter and reading it back")
+  @Category(CATEGORY)
+  static final class SetValue extends Event {
+    @Label("Path")
+    String path;
+    @Label("Value")
+    String value;
+    @Label("Result Code")
+    int rsc;
+  }
+
+  @Name("de.karstenbecker.daikin.InfluxPublish")
+  @Label("Influx Publish")
+  @Description("Publishing a batch of influx lines, or writing it to the journal")
+  @Category(CATEGORY)
+  static final class InfluxPublish extends Event {
+    @Label("Topic")
+    String topic;
+    @Label("Size")
+    @DataAmount
+    long bytes;
+    @Label("Journaled")
+    boolean journaled;
+    @Label("Replayed")
+    boolean replayed;
+    @Label("Success")
+    boolean success;
+  }
+
+}
@@ -0,0 +1,87 @@
+package de.karstenbecker.daikin;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * Counts durations in logarithmic buckets, in the spirit of HdrHistogram but with a fixed, small footprint. Every power
+ * of two of microseconds is split into 8 linear sub buckets, so a percentile is at most 12.5% off, from 1µs up to a
+ * few hours. Recording is lock free and does not allocate.
+ */
+@NonNullByDefault
+public class LatencyHistogram {
+  private static final int SUB_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  private static final int MAGNITUDES = 32;
+
+  private final AtomicLongArray counts = new AtomicLongArray(MAGNITUDES * SUB_BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalMicros = new AtomicLong();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  public void recordNanos(long nanos) {
+    long micros = Math.max(0, nanos / 1000);
+    counts.incrementAndGet(bucket(micros));
+    count.incrementAndGet();
+    totalMicros.addAndGet(micros);
+    maxMicros.accumulateAndGet(micros, Math::max);
+  }
+
+  /**
+   * Values below 8µs get a bucket each, above that the magnitude selects 8 buckets and the next 3 bits the bucket.
+   */
+  private static int bucket(long micros) {
+    if (micros < SUB_BUCKETS)
+      return (int) micros;
+    int magnitude = 63 - Long.numberOfLeadingZeros(micros) - SUB_BITS + 1;
+    if (magnitude >= MAGNITUDES)
+      return MAGNITUDES * SUB_BUCKETS - 1;
+    int sub = (int) (micros >>> (magnitude - 1)) & (SUB_BUCKETS - 1);
+    return magnitude * SUB_BUCKETS + sub;
+  }
+
+  /**
+   * @return the upper bound of the bucket in µs
+   */
+  private static long upperBound(int bucket) {
+    int magnitude = bucket / SUB_BUCKETS;
+    int sub = bucket % SUB_BUCKETS;
+    if (magnitude == 0)
+      return sub;
+    return ((long) (SUB_BUCKETS + sub + 1) << (magnitude - 1)) - 1;
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public double getMeanMillis() {
+    long n = count.get();
+    return n == 0 ? 0 : totalMicros.get() / 1000.0 / n;
+  }
+
+  public double getMaxMillis() {
+    return maxMicros.get() / 1000.0;
+  }
+
+  /**
+   * @param quantile between 0 and 1, for example 0.99
+   * @return the upper bound of the bucket that holds the quantile in ms, 0 if nothing was recorded
+   */
+  public double getQuantileMillis(double quantile) {
+    long n = count.get();
+    if (n == 0)
+      return 0;
+    long rank = (long) Math.ceil(quantile * n);
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen >= rank)
+        return Math.min(upperBound(i), maxMicros.get()) / 1000.0;
+    }
+    return getMaxMillis();
+  }
+
+}
@@ -0,0 +1,77 @@
+package de.karstenbecker.daikin;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The latest numeric values of one adapter for the metrics endpoint, keyed by the homie property id, so the series of
+ * CONSUMPTION properties are included. The version only changes when a value changes, so a rendered body can be reused
+ * until then.
+ */
+@NonNullByDefault
+public class MetricValues {
+  private final Map<String, String> values = new TreeMap<>();
+  private volatile long version;
+
+  /**
+   * Takes the numeric values of the published values, null values remove the value.
+   */
+  public synchronized void update(Map<String, @Nullable String> published) {
+    for (Entry<String, @Nullable String> e : published.entrySet()) {
+      String value = e.getValue();
+      // Strings and enums are quoted for influx
+      if (value != null && value.startsWith("\""))
+        continue;
+      String before = value == null ? values.remove(e.getKey()) : values.put(e.getKey(), value);
+      if (!Objects.equals(before, value))
+        version++;
+    }
+  }
+
+  public synchronized void update(String id, String value) {
+    if (!value.equals(values.put(id, value)))
+      version++;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Appends a sample of the daikin_value gauge for every value.
+   */
+  public synchronized void render(String device, StringBuilder out) {
+    for (Entry<String, String> e : values.entrySet()) {
+      out.append("daikin_value{device=\"");
+      appendLabel(device, out);
+      out.append("\",id=\"");
+      appendLabel(e.getKey(), out);
+      out.append("\"} ").append(e.getValue()).append('\n');
+    }
+  }
+
+  private static void appendLabel(String value, StringBuilder out) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+      case '\\':
+        out.append("\\\\");
+        break;
+      case '"':
+        out.append("\\\"");
+        break;
+      case '\n':
+        out.append("\\n");
+        break;
+      default:
+        out.append(c);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,178 @@
+package de.karstenbecker.daikin;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * A hierarchical timing wheel with a resolution of one second. Scheduling and advancing cost O(1) per entry instead of
+ * comparing every property against its deadline on every tick, and {@link #nextDueMillis()} tells how long the poller
+ * can sleep. Each level has 64 slots, a slot on level n spans 64^n seconds, so four levels cover about 194 days. Later
+ * entries are parked on the top level and cascaded down when their slot comes up.
+ *
+ * This class is not thread safe, it is meant to be used by a single poller thread.
+ */
+@NonNullByDefault
+public class PollScheduler<T> {
+  private static final long TICK_MS = 1000L;
+  private static final int SLOT_BITS = 6;
+  private static final int SLOTS = 1 << SLOT_BITS;
+  private static final int SLOT_MASK = SLOTS - 1;
+  private static final int LEVELS = 4;
+  private static final long MAX_DELTA = 1L << (SLOT_BITS * LEVELS);
+
+  public static final class Entry<T> {
+    public final T item;
+    public final long dueMillis;
+    private final long dueTick;
+
+    private Entry(T item, long dueMillis, long dueTick) {
+      this.item = item;
+      this.dueMillis = dueMillis;
+      this.dueTick = dueTick;
+    }
+  }
+
+  private final List<List<List<Entry<T>>>> wheels = new ArrayList<>(LEVELS);
+  private final List<Entry<T>> ready = new ArrayList<>();
+  private long currentTick;
+  private int size = 0;
+
+  public PollScheduler(long nowMillis) {
+    currentTick = nowMillis / TICK_MS;
+    for (int level = 0; level < LEVELS; level++) {
+      List<List<Entry<T>>> slots = new ArrayList<>(SLOTS);
+      for (int slot = 0; slot < SLOTS; slot++) {
+        slots.add(new ArrayList<>(2));
+      }
+      wheels.add(slots);
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Schedules the item to be returned by {@link #advance(long)} once the given time has passed. Times in the past are
+   * due immediately.
+   */
+  public void schedule(T item, long dueMillis) {
+    long dueTick = (dueMillis + TICK_MS - 1) / TICK_MS;
+    insert(new Entry<>(item, dueMillis, dueTick));
+    size++;
+  }
+
+  private void insert(Entry<T> entry) {
+    long delta = entry.dueTick - currentTick;
+    if (delta <= 0) {
+      ready.add(entry);
+      return;
+    }
+    long placeTick = entry.dueTick;
+    if (delta >= MAX_DELTA) {
+      // Park it on the top level, it is placed again when that slot is cascaded
+      placeTick = currentTick + MAX_DELTA - 1;
+      delta = MAX_DELTA - 1;
+    }
+    int level = 0;
+    while (delta >= (1L << (SLOT_BITS * (level + 1)))) {
+      level++;
+    }
+    int slot = (int) ((placeTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+    wheels.get(level).get(slot).add(entry);
+  }
+
+  /**
+   * @return the time at which the next entry is due, {@link Long#MAX_VALUE} if nothing is scheduled
+   */
+  public long nextDueMillis() {
+    if (!ready.isEmpty())
+      return currentTick * TICK_MS;
+    // The first occupied slot of each level holds the earliest entries of that level
+    long next = Long.MAX_VALUE;
+    for (int level = 0; level < LEVELS; level++) {
+      List<Entry<T>> slot = firstOccupiedSlot(level);
+      if (slot == null)
+        continue;
+      for (Entry<T> entry : slot) {
+        next = Math.min(next, entry.dueTick);
+      }
+    }
+    return next == Long.MAX_VALUE ? Long.MAX_VALUE : next * TICK_MS;
+  }
+
+  /**
+   * The next tick at which a non empty slot is processed. For level 0 that is when the entries are due, for the higher
+   * levels that is when the slot is cascaded down.
+   */
+  private long nextEventTick() {
+    long next = Long.MAX_VALUE;
+    for (int level = 0; level < LEVELS; level++) {
+      long candidate = firstOccupiedLevelTick(level);
+      if (candidate != Long.MAX_VALUE)
+        next = Math.min(next, candidate << (SLOT_BITS * level));
+    }
+    return next;
+  }
+
+  private long firstOccupiedLevelTick(int level) {
+    long levelTick = currentTick >>> (SLOT_BITS * level);
+    List<List<Entry<T>>> slots = wheels.get(level);
+    for (int i = 1; i <= SLOTS; i++) {
+      long candidate = levelTick + i;
+      if (!slots.get((int) (candidate & SLOT_MASK)).isEmpty())
+        return candidate;
+    }
+    return Long.MAX_VALUE;
+  }
+
+  private @Nullable List<Entry<T>> firstOccupiedSlot(int level) {
+    long levelTick = firstOccupiedLevelTick(level);
+    if (levelTick == Long.MAX_VALUE)
+      return null;
+    return wheels.get(level).get((int) (levelTick & SLOT_MASK));
+  }
+
+  /**
+   * Moves the wheel forward to the given time.
+   *
+   * @return all entries that are due, in the order of their due time
+   */
+  public List<Entry<T>> advance(long nowMillis) {
+    long targetTick = nowMillis / TICK_MS;
+    while (currentTick < targetTick) {
+      long next = nextEventTick();
+      if (next > targetTick) {
+        // Nothing happens in between, so the wheel can jump
+        currentTick = targetTick;
+        break;
+      }
+      currentTick = next;
+      for (int level = LEVELS - 1; level > 0; level--) {
+        int shift = SLOT_BITS * level;
+        if ((currentTick & ((1L << shift) - 1)) != 0)
+          continue;
+        List<Entry<T>> slot = wheels.get(level).get((int) ((currentTick >>> shift) & SLOT_MASK));
+        if (slot.isEmpty())
+          continue;
+        List<Entry<T>> cascade = new ArrayList<>(slot);
+        slot.clear();
+        for (Entry<T> entry : cascade) {
+          insert(entry);
+        }
+      }
+      List<Entry<T>> slot = wheels.get(0).get((int) (currentTick & SLOT_MASK));
+      ready.addAll(slot);
+      slot.clear();
+    }
+    List<Entry<T>> result = new ArrayList<>(ready);
+    ready.clear();
+    size -= result.size();
+    result.sort((a, b) -> Long.compare(a.dueMillis, b.dueMillis));
+    return result;
+  }
+
+}
@@ -0,0 +1,248 @@
+package de.karstenbecker.daikin;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures where the time of a poller goes. The stages are:
+ * <ul>
+ * <li>queue: from submitting a request until it is sent, when the in-flight window is full</li>
+ * <li>reply: from sending a request until its reply arrives, also kept per request target</li>
+ * <li>parse: decoding a frame from the adapter</li>
+ * <li>publish: handling a value and publishing it to MQTT</li>
+ * <li>cycle: a complete poll of the due properties</li>
+ * <li>lateness: how much later than scheduled a poll started</li>
+ * </ul>
+ */
+@NonNullByDefault
+public class PollerStats implements PollerStatsMXBean {
+  public enum Stage {
+    QUEUE, REPLY, PARSE, PUBLISH, CYCLE, LATENESS
+  }
+
+  /**
+   * A summary of a histogram, shown as composite data over JMX.
+   */
+  public static final class Latency {
+    private final long count;
+    private final double meanMillis;
+    private final double p50Millis;
+    private final double p99Millis;
+    private final double maxMillis;
+
+    Latency(LatencyHistogram histogram) {
+      count = histogram.getCount();
+      meanMillis = histogram.getMeanMillis();
+      p50Millis = histogram.getQuantileMillis(0.5);
+      p99Millis = histogram.getQuantileMillis(0.99);
+      maxMillis = histogram.getMaxMillis();
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public double getMeanMillis() {
+      return meanMillis;
+    }
+
+    public double getP50Millis() {
+      return p50Millis;
+    }
+
+    public double getP99Millis() {
+      return p99Millis;
+    }
+
+    public double getMaxMillis() {
+      return maxMillis;
+    }
+  }
+
+  private static final Logger logger = LoggerFactory.getLogger(PollerStats.class);
+
+  private final IntSupplier reconnects;
+  private final Supplier<Map<String, Integer>> pollIntervals;
+  private volatile Map<Stage, LatencyHistogram> stages = newStages();
+  private final Map<String, LatencyHistogram> paths = new ConcurrentHashMap<>();
+  private final Map<Integer, LongAdder> responseCodes = new ConcurrentHashMap<>();
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder timeouts = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+  @Nullable
+  private ObjectName name;
+
+  public PollerStats(IntSupplier reconnects, Supplier<Map<String, Integer>> pollIntervals) {
+    this.reconnects = reconnects;
+    this.pollIntervals = pollIntervals;
+  }
+
+  private static Map<Stage, LatencyHistogram> newStages() {
+    Map<Stage, LatencyHistogram> stages = new EnumMap<>(Stage.class);
+    for (Stage stage : Stage.values()) {
+      stages.put(stage, new LatencyHistogram());
+    }
+    return stages;
+  }
+
+  public void recordStage(Stage stage, long nanos) {
+    stages.get(stage).recordNanos(nanos);
+  }
+
+  public void recordRequest() {
+    requests.increment();
+  }
+
+  /**
+   * @param queuedNanos the time the request waited for the in-flight window
+   * @param replyNanos the time from sending the request until the reply arrived
+   */
+  public void recordReply(String target, int rsc, long queuedNanos, long replyNanos) {
+    recordStage(Stage.QUEUE, queuedNanos);
+    recordStage(Stage.REPLY, replyNanos);
+    paths.computeIfAbsent(target, t -> new LatencyHistogram()).recordNanos(replyNanos);
+    if (rsc != 2000)
+      responseCodes.computeIfAbsent(rsc, c -> new LongAdder()).increment();
+  }
+
+  public void recordTimeout() {
+    timeouts.increment();
+  }
+
+  public void recordFailure() {
+    failures.increment();
+  }
+
+  /**
+   * Registers the statistics with the platform MBean server, a failure is only logged.
+   */
+  public void register(String device) {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName objectName = new ObjectName("de.karstenbecker.daikin:type=Poller,name=" + ObjectName.quote(device));
+      if (server.isRegistered(objectName))
+        server.unregisterMBean(objectName);
+      server.registerMBean(this, objectName);
+      name = objectName;
+    } catch (JMException e) {
+      logger.warn("Failed to register the statistics of " + device + " over JMX", e);
+    }
+  }
+
+  public void unregister() {
+    ObjectName objectName = name;
+    if (objectName == null)
+      return;
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    } catch (JMException e) {
+      logger.debug("Failed to unregister " + objectName, e);
+    }
+    name = null;
+  }
+
+  /**
+   * @return the statistics that are published as homie $stats attributes
+   */
+  public Map<String, String> getHomieStats() {
+    Map<String, String> stats = new LinkedHashMap<>();
+    long errors = 0;
+    for (Entry<Integer, LongAdder> e : responseCodes.entrySet()) {
+      if (e.getKey() >= 4000)
+        errors += e.getValue().sum();
+    }
+    stats.put("requests", Long.toString(requests.sum()));
+    stats.put("timeouts", Long.toString(timeouts.sum()));
+    stats.put("failures", Long.toString(failures.sum()));
+    stats.put("errors", Long.toString(errors));
+    stats.put("reconnects", Integer.toString(reconnects.getAsInt()));
+    for (Stage stage : Stage.values()) {
+      stats.put(stage.name().toLowerCase() + "-p99-ms", String.format(Locale.ROOT, "%.1f", stages.get(stage).getQuantileMillis(0.99)));
+    }
+    return stats;
+  }
+
+  @Override
+  public long getRequests() {
+    return requests.sum();
+  }
+
+  @Override
+  public long getTimeouts() {
+    return timeouts.sum();
+  }
+
+  @Override
+  public long getFailures() {
+    return failures.sum();
+  }
+
+  @Override
+  public int getReconnects() {
+    return reconnects.getAsInt();
+  }
+
+  @Override
+  public Map<String, Long> getResponseCodes() {
+    Map<String, Long> codes = new TreeMap<>();
+    for (Entry<Integer, LongAdder> e : responseCodes.entrySet()) {
+      codes.put(e.getKey().toString(), e.getValue().sum());
+    }
+    return codes;
+  }
+
+  @Override
+  public Map<String, Latency> getStageLatencies() {
+    Map<String, Latency> latencies = new LinkedHashMap<>();
+    for (Entry<Stage, LatencyHistogram> e : stages.entrySet()) {
+      latencies.put(e.getKey().name().toLowerCase(), new Latency(e.getValue()));
+    }
+    return latencies;
+  }
+
+  @Override
+  public Map<String, Latency> getPathLatencies() {
+    Map<String, Latency> latencies = new TreeMap<>();
+    for (Entry<String, LatencyHistogram> e : paths.entrySet()) {
+      latencies.put(e.getKey(), new Latency(e.getValue()));
+    }
+    return latencies;
+  }
+
+  @Override
+  public Map<String, Integer> getCurrentPollIntervals() {
+    return pollIntervals.get();
+  }
+
+  /**
+   * Starts the histograms and counters from 0, the reconnects are kept by the session.
+   */
+  @Override
+  public void reset() {
+    stages = newStages();
+    paths.clear();
+    responseCodes.clear();
+    requests.reset();
+    timeouts.reset();
+    failures.reset();
+  }
+
+}
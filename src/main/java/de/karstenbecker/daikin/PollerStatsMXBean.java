@@ -0,0 +1,43 @@
+package de.karstenbecker.daikin;
+
+import java.util.Map;
+
+/**
+ * The statistics of one poller over JMX, registered as {@code de.karstenbecker.daikin:type=Poller,name=<device>}.
+ */
+public interface PollerStatsMXBean {
+
+  /**
+   * @return the number of requests sent to the adapter
+   */
+  long getRequests();
+
+  long getTimeouts();
+
+  /**
+   * @return the number of requests that failed without a reply, for example because the session closed
+   */
+  long getFailures();
+
+  int getReconnects();
+
+  /**
+   * @return the number of replies by rsc for all codes but 2000
+   */
+  Map<String, Long> getResponseCodes();
+
+  /**
+   * @return the latencies of the stages queue, reply, parse, publish, cycle and lateness
+   */
+  Map<String, PollerStats.Latency> getStageLatencies();
+
+  /**
+   * @return the reply latency by the target of the request
+   */
+  Map<String, PollerStats.Latency> getPathLatencies();
+
+  Map<String, Integer> getCurrentPollIntervals();
+
+  void reset();
+
+}
@@ -0,0 +1,83 @@
+package de.karstenbecker.daikin;
+
+import java.nio.ByteBuffer;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The recent values of a numeric property in a fixed size ring buffer outside of the heap. A point takes 8 bytes, the
+ * seconds since the creation of the history as int and the value as float. A value is only stored when it differs from
+ * the previous one, so a property that rarely changes covers a long time with few points.
+ */
+@NonNullByDefault
+public class PropertyHistory {
+  private static final int POINT_BYTES = 8;
+  /** The time the int second offsets of the points can span, nothing older can be held */
+  public static final int MAX_HOURS = Integer.MAX_VALUE / 3600;
+
+  private final ByteBuffer points;
+  private final int capacity;
+  private final long baseSeconds;
+  /** The index the next point is written to */
+  private int next;
+  private int size;
+  private float lastValue;
+
+  /**
+   * Receives the points of a query.
+   */
+  @FunctionalInterface
+  public interface PointConsumer {
+    void accept(long timestampMillis, float value);
+  }
+
+  public PropertyHistory(int capacity, long nowMillis) {
+    this.capacity = capacity;
+    this.points = ByteBuffer.allocateDirect(capacity * POINT_BYTES);
+    this.baseSeconds = nowMillis / 1000;
+  }
+
+  public synchronized void add(long timestampMillis, double value) {
+    float compact = (float) value;
+    if (size > 0 && Float.compare(compact, lastValue) == 0)
+      return;
+    int offset = next * POINT_BYTES;
+    points.putInt(offset, (int) (timestampMillis / 1000 - baseSeconds));
+    points.putFloat(offset + 4, compact);
+    lastValue = compact;
+    next = (next + 1) % capacity;
+    if (size < capacity)
+      size++;
+  }
+
+  /**
+   * Passes the points since the given time to the consumer, oldest first. The last point before that time is passed as
+   * well, as its value was still valid at the start.
+   */
+  public synchronized void query(long fromMillis, PointConsumer consumer) {
+    int oldest = (next - size + capacity) % capacity;
+    long fromSeconds = fromMillis / 1000 - baseSeconds;
+    int first = size;
+    // The points are ordered by time, the first one in range is found by a binary search
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (points.getInt(((oldest + mid) % capacity) * POINT_BYTES) >= fromSeconds) {
+        first = mid;
+        high = mid - 1;
+      } else {
+        low = mid + 1;
+      }
+    }
+    for (int i = Math.max(0, first - 1); i < size; i++) {
+      int offset = ((oldest + i) % capacity) * POINT_BYTES;
+      consumer.accept((baseSeconds + points.getInt(offset)) * 1000, points.getFloat(offset + 4));
+    }
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+}
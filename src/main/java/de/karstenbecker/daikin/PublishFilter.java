@@ -0,0 +1,86 @@
+package de.karstenbecker.daikin;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.karstenbecker.daikin.DaikinProperty.DataType;
+
+/**
+ * Remembers the last published value of a property and suppresses publishing the same value again until the heartbeat
+ * expires. A heartbeat of 0 disables the filter, so every poll is published.
+ * <p>
+ * For numeric properties a deadband can be configured. A value is then only published when it differs from the last
+ * published value by more than the absolute deadband, or by more than the relative deadband times the last value. With
+ * a deadband a heartbeat of 0 means that values inside the band are never republished.
+ */
+@NonNullByDefault
+public class PublishFilter {
+  private final long heartbeatMs;
+  private final double deadbandAbsolute;
+  private final double deadbandRelative;
+  @Nullable
+  private String lastValue;
+  private double lastNumber = Double.NaN;
+  private long lastPublished;
+
+  public PublishFilter(int heartbeatSeconds) {
+    this(heartbeatSeconds, 0, 0);
+  }
+
+  public PublishFilter(int heartbeatSeconds, double deadbandAbsolute, double deadbandRelative) {
+    this.heartbeatMs = heartbeatSeconds * 1000L;
+    this.deadbandAbsolute = Math.max(0, deadbandAbsolute);
+    this.deadbandRelative = Math.max(0, deadbandRelative);
+  }
+
+  /**
+   * Creates the filter for a property. The maxSilenceSeconds of the property override the global heartbeat, the
+   * deadband is only used for FLOAT and INTEGER properties.
+   */
+  public static PublishFilter forProperty(DaikinProperty prop, int heartbeatSeconds) {
+    Integer maxSilence = prop.getMaxSilenceSeconds();
+    int heartbeat = maxSilence != null ? maxSilence : heartbeatSeconds;
+    DataType type = prop.getDataType();
+    if (type != DataType.FLOAT && type != DataType.INTEGER)
+      return new PublishFilter(heartbeat);
+    Double absolute = prop.getDeadbandAbsolute();
+    Double relative = prop.getDeadbandRelative();
+    return new PublishFilter(heartbeat, absolute != null ? absolute : 0, relative != null ? relative : 0);
+  }
+
+  public boolean hasDeadband() {
+    return deadbandAbsolute > 0 || deadbandRelative > 0;
+  }
+
+  /**
+   * @return true if the value should be published, in that case it becomes the new last value
+   */
+  public synchronized boolean offer(String value, long now) {
+    double number = hasDeadband() ? parse(value) : Double.NaN;
+    boolean silenceExpired = heartbeatMs > 0 ? now - lastPublished >= heartbeatMs : !hasDeadband();
+    if (!silenceExpired) {
+      if (value.equals(lastValue))
+        return false;
+      if (!Double.isNaN(number) && !Double.isNaN(lastNumber) && insideBand(number))
+        return false;
+    }
+    lastValue = value;
+    lastNumber = number;
+    lastPublished = now;
+    return true;
+  }
+
+  private boolean insideBand(double number) {
+    double band = Math.max(deadbandAbsolute, deadbandRelative * Math.abs(lastNumber));
+    return Math.abs(number - lastNumber) <= band;
+  }
+
+  private static double parse(String value) {
+    try {
+      return Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+
+}
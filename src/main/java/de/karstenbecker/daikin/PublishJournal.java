@@ -0,0 +1,281 @@
+package de.karstenbecker.daikin;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only journal of messages that could not be published, kept in segment files. Messages are read back in the
+ * order they were appended and a segment is closed and deleted once all its messages have been read.
+ *
+ * A segment starts with a header holding a magic number, the version and the position of the next message to read.
+ * Every message is stored as its length, the CRC32 of its bytes and the bytes. The length is written last, so a message
+ * that was only partially written is treated as the end of the segment.
+ */
+@NonNullByDefault
+public class PublishJournal implements AutoCloseable {
+  private static final int MAGIC = 0x444a524e;
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 16;
+  private static final int READ_POSITION = 8;
+  private static final int RECORD_HEADER_BYTES = 8;
+  private static final String SUFFIX = ".journal";
+
+  private static final Logger logger = LoggerFactory.getLogger(PublishJournal.class);
+
+  private final Path directory;
+  private final int segmentBytes;
+  /** The segments with unread messages, the last one is written to */
+  private final Deque<Segment> segments = new ArrayDeque<>();
+  private final CRC32 crc = new CRC32();
+  private final ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+  private final ByteBuffer position = ByteBuffer.allocate(4);
+  private long nextSegment;
+  private int pendingMessages;
+
+  private static final class Segment {
+    final Path file;
+    final FileChannel channel;
+    int readPosition;
+    int writePosition;
+
+    Segment(Path file, FileChannel channel) {
+      this.file = file;
+      this.channel = channel;
+    }
+  }
+
+  private PublishJournal(Path directory, int segmentBytes) {
+    this.directory = directory;
+    this.segmentBytes = segmentBytes;
+  }
+
+  /**
+   * Opens the journal in the directory and continues after the last message that was read.
+   *
+   * @param segmentBytes the size of a segment file, larger messages get a segment of their own
+   */
+  public static PublishJournal open(Path directory, int segmentBytes) throws IOException {
+    Files.createDirectories(directory);
+    PublishJournal journal = new PublishJournal(directory, Math.max(segmentBytes, HEADER_BYTES + RECORD_HEADER_BYTES));
+    List<Path> files = new ArrayList<>();
+    try (Stream<Path> list = Files.list(directory)) {
+      list.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).sorted().forEach(files::add);
+    }
+    for (Path file : files) {
+      String name = file.getFileName().toString();
+      FileChannel channel = null;
+      try {
+        journal.nextSegment = Math.max(journal.nextSegment, Long.parseLong(name.substring(0, name.length() - SUFFIX.length())) + 1);
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(file, channel);
+        journal.recover(segment);
+        journal.segments.add(segment);
+      } catch (IOException | NumberFormatException e) {
+        logger.warn("Ignoring journal segment " + file + " that could not be read: " + e.getMessage());
+        if (channel != null)
+          channel.close();
+      }
+    }
+    if (journal.pendingMessages > 0)
+      logger.info("Journal " + directory + " holds " + journal.pendingMessages + " unpublished messages");
+    return journal;
+  }
+
+  private Segment create(Path file) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    header.putInt(0, MAGIC).putInt(4, VERSION).putInt(READ_POSITION, HEADER_BYTES);
+    try {
+      write(channel, header, 0);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    Segment segment = new Segment(file, channel);
+    segment.readPosition = HEADER_BYTES;
+    segment.writePosition = HEADER_BYTES;
+    return segment;
+  }
+
+  /**
+   * Checks the header, finds the end of the written messages and counts the unread ones.
+   */
+  private void recover(Segment segment) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    if (segment.channel.size() < HEADER_BYTES)
+      throw new IOException("Not a journal segment");
+    read(segment.channel, header, 0);
+    if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+      throw new IOException("Not a journal segment");
+    segment.readPosition = header.getInt(READ_POSITION);
+    int position = HEADER_BYTES;
+    while (true) {
+      byte[] message = readRecord(segment, position);
+      if (message == null)
+        break;
+      if (position >= segment.readPosition)
+        pendingMessages++;
+      position += RECORD_HEADER_BYTES + message.length;
+    }
+    segment.writePosition = position;
+  }
+
+  /**
+   * @return the message at the position, null if there is none or it is damaged
+   */
+  private byte @Nullable [] readRecord(Segment segment, int position) throws IOException {
+    long size = segment.channel.size();
+    if (position + RECORD_HEADER_BYTES > size)
+      return null;
+    recordHeader.clear();
+    read(segment.channel, recordHeader, position);
+    int length = recordHeader.getInt(0);
+    if (length <= 0 || length > size - position - RECORD_HEADER_BYTES)
+      return null;
+    byte[] message = new byte[length];
+    read(segment.channel, ByteBuffer.wrap(message), position + RECORD_HEADER_BYTES);
+    crc.reset();
+    crc.update(message);
+    if ((int) crc.getValue() != recordHeader.getInt(4))
+      return null;
+    return message;
+  }
+
+  /**
+   * Appends the message, a new segment is started if it does not fit into the current one.
+   */
+  public synchronized void append(byte[] message) throws IOException {
+    if (message.length == 0)
+      return;
+    int recordBytes = RECORD_HEADER_BYTES + message.length;
+    Segment segment = segments.peekLast();
+    if (segment == null || segment.writePosition > segmentBytes - recordBytes) {
+      if (segment != null)
+        segment.channel.force(false);
+      segment = create(directory.resolve(String.format("%016d", nextSegment++) + SUFFIX));
+      segments.add(segment);
+    }
+    int at = segment.writePosition;
+    crc.reset();
+    crc.update(message);
+    ByteBuffer record = ByteBuffer.allocate(recordBytes - 4);
+    record.putInt((int) crc.getValue()).put(message).flip();
+    write(segment.channel, record, at + 4);
+    position.clear();
+    position.putInt(0, message.length);
+    write(segment.channel, position, at);
+    segment.writePosition = at + recordBytes;
+    pendingMessages++;
+  }
+
+  /**
+   * @return the oldest unread message, null if there is none
+   */
+  public synchronized byte @Nullable [] peek() throws IOException {
+    Segment segment = firstUnread();
+    if (segment == null)
+      return null;
+    byte[] message = readRecord(segment, segment.readPosition);
+    if (message == null)
+      throw new IOException("Damaged message in journal segment " + segment.file + " at " + segment.readPosition);
+    return message;
+  }
+
+  /**
+   * Marks the message returned by {@link #peek()} as read.
+   */
+  public synchronized void remove() throws IOException {
+    Segment segment = firstUnread();
+    if (segment == null)
+      return;
+    recordHeader.clear();
+    read(segment.channel, recordHeader, segment.readPosition);
+    segment.readPosition += RECORD_HEADER_BYTES + recordHeader.getInt(0);
+    position.clear();
+    position.putInt(0, segment.readPosition);
+    write(segment.channel, position, READ_POSITION);
+    pendingMessages--;
+    firstUnread();
+  }
+
+  /**
+   * Closes and deletes the segments that were read completely and are no longer written to.
+   *
+   * @return the segment holding the oldest unread message, null if all messages were read
+   */
+  private @Nullable Segment firstUnread() {
+    while (true) {
+      Segment segment = segments.peekFirst();
+      if (segment == null)
+        return null;
+      if (segment.readPosition < segment.writePosition)
+        return segment;
+      if (segment == segments.peekLast())
+        return null;
+      segments.removeFirst();
+      try {
+        segment.channel.close();
+        Files.deleteIfExists(segment.file);
+      } catch (IOException e) {
+        logger.warn("Failed to delete journal segment " + segment.file, e);
+      }
+    }
+  }
+
+  private static void read(FileChannel channel, ByteBuffer buffer, long at) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, at + buffer.position()) < 0)
+        throw new EOFException();
+    }
+  }
+
+  private static void write(FileChannel channel, ByteBuffer buffer, long at) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, at + buffer.position());
+    }
+  }
+
+  /**
+   * @return the number of messages that were appended but not read
+   */
+  public synchronized int getPendingMessages() {
+    return pendingMessages;
+  }
+
+  public synchronized boolean isEmpty() {
+    return pendingMessages == 0;
+  }
+
+  /**
+   * Writes the segments to the disk and closes them.
+   */
+  @Override
+  public synchronized void close() {
+    for (Segment segment : segments) {
+      try {
+        segment.channel.force(false);
+        segment.channel.close();
+      } catch (IOException e) {
+        logger.warn("Failed to close journal segment " + segment.file, e);
+      }
+    }
+    segments.clear();
+  }
+
+}
@@ -0,0 +1,93 @@
+package de.karstenbecker.daikin;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * A oneM2M request that is serialized once. Only the rqi is filled in when the request is sent.
+ */
+@NonNullByDefault
+public final class RequestFrame {
+  static final String ORIGINATOR = "/OpenHab";
+  static final String MNAE = "/[0]/MNAE/";
+  /** The name of the subscription resources that are created below the subscribed containers */
+  public static final String SUBSCRIPTION_NAME = "OpenHabSubscription";
+
+  public static final RequestFrame DEVICE_INFO = new RequestFrame("/[0]/MNCSE-node/deviceInfo",
+      "{\"m2m:rqp\":{\"op\":2,\"to\":\"/[0]/MNCSE-node/deviceInfo\",\"fr\":\"" + ORIGINATOR + "\",\"rqi\":\"", "\"}}");
+
+  private final String target;
+  private final String prefix;
+  private final String suffix;
+
+  private RequestFrame(String target, String prefix, String suffix) {
+    this.target = target;
+    this.prefix = prefix;
+    this.suffix = suffix;
+  }
+
+  /**
+   * A retrieve (op 2) of the given item below MNAE, for example {@code 1/Sensor/IndoorTemperature/la}
+   */
+  public static RequestFrame retrieve(String item) {
+    String to = MNAE + item;
+    return new RequestFrame(to, "{\"m2m:rqp\":{\"op\":2,\"to\":\"" + to + "\",\"fr\":\"" + ORIGINATOR + "\",\"rqi\":\"", "\"}}");
+  }
+
+  /**
+   * A retrieve (op 2) of the given container with all its child resources (rcn 4), for example {@code 1/Sensor}
+   */
+  public static RequestFrame retrieveTree(String item) {
+    String to = MNAE + item;
+    return new RequestFrame(to, "{\"m2m:rqp\":{\"op\":2,\"to\":\"" + to + "\",\"fr\":\"" + ORIGINATOR + "\",\"rqi\":\"", "\",\"rcn\":4}}");
+  }
+
+  /**
+   * A create (op 1) of a content instance with the given json value below the item
+   */
+  public static RequestFrame createContentInstance(String item, String value) {
+    String to = MNAE + item;
+    return new RequestFrame(to, "{\"m2m:rqp\":{\"op\":1,\"to\":\"" + to + "\",\"fr\":\"" + ORIGINATOR + "\",\"rqi\":\"",
+        "\",\"ty\":4,\"pc\":{\"m2m:cin\":{\"con\":" + value + ",\"cnf\":\"text/plain:0\"}}}}");
+  }
+
+  /**
+   * A create (op 1) of a subscription (ty 23) below the item. The adapter notifies the originator over the websocket
+   * whenever a content instance is created in the item (net 3), the notification contains the whole content instance
+   * (nct 1).
+   */
+  public static RequestFrame createSubscription(String item) {
+    String to = MNAE + item;
+    return new RequestFrame(to, "{\"m2m:rqp\":{\"op\":1,\"to\":\"" + to + "\",\"fr\":\"" + ORIGINATOR + "\",\"rqi\":\"",
+        "\",\"ty\":23,\"pc\":{\"m2m:sub\":{\"rn\":\"" + SUBSCRIPTION_NAME + "\",\"enc\":{\"net\":[3]},\"nu\":[\"" + ORIGINATOR
+            + "\"],\"nct\":1}}}}");
+  }
+
+  /**
+   * The reply to a notification, it only acknowledges the notify request with the given rqi.
+   */
+  public static String notificationResponse(String rqi, @Nullable String to) {
+    StringBuilder sb = new StringBuilder("{\"m2m:rsp\":{\"rsc\":2000,\"rqi\":\"").append(escape(rqi)).append('"');
+    if (to != null)
+      sb.append(",\"to\":\"").append(escape(to)).append('"');
+    return sb.append(",\"fr\":\"").append(ORIGINATOR).append("\"}}").toString();
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+
+  public String getTarget() {
+    return target;
+  }
+
+  public String build(String rqi) {
+    return prefix + rqi + suffix;
+  }
+
+  @Override
+  public String toString() {
+    return build("");
+  }
+
+}
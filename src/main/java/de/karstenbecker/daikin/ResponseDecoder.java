@@ -0,0 +1,198 @@
+package de.karstenbecker.daikin;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Decodes adapter responses in a single streaming pass. Only m2m:rsp/rqi, m2m:rsp/rsc and m2m:rsp/pc/m2m:cin/con are
+ * extracted, everything else is skipped without building a Json tree. Notify requests (a m2m:rqp with op 5) are decoded
+ * into an {@link AdapterNotification}.
+ */
+@NonNullByDefault
+public final class ResponseDecoder {
+
+  private ResponseDecoder() {
+  }
+
+  /**
+   * @throws IOException if the message is not valid json
+   */
+  public static AdapterResponse decode(String message) throws IOException {
+    String rqi = null;
+    int rsc = AdapterResponse.NO_RSC;
+    String con = null;
+    try (JsonReader reader = new JsonReader(new StringReader(message))) {
+      if (reader.peek() != JsonToken.BEGIN_OBJECT)
+        return new AdapterResponse(message, null, rsc, null);
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String frame = reader.nextName();
+        if ("m2m:rqp".equals(frame) && reader.peek() == JsonToken.BEGIN_OBJECT)
+          return decodeRequest(message, reader);
+        if (!"m2m:rsp".equals(frame) || reader.peek() != JsonToken.BEGIN_OBJECT) {
+          reader.skipValue();
+          continue;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+          String name = reader.nextName();
+          switch (name) {
+          case "rqi":
+            rqi = readPrimitive(reader);
+            break;
+          case "rsc":
+            if (reader.peek() == JsonToken.NUMBER || reader.peek() == JsonToken.STRING)
+              rsc = reader.nextInt();
+            else
+              reader.skipValue();
+            break;
+          case "pc":
+            con = readContent(reader);
+            break;
+          default:
+            reader.skipValue();
+          }
+        }
+        reader.endObject();
+      }
+    } catch (IllegalStateException | NumberFormatException e) {
+      throw new IOException("Failed to decode:" + message, e);
+    }
+    return new AdapterResponse(message, rqi, rsc, con);
+  }
+
+  /**
+   * Decodes the m2m:rqp the reader is positioned at. Requests other than notifications are returned as a response
+   * without rsc, so that they are dropped.
+   */
+  private static AdapterResponse decodeRequest(String message, JsonReader reader) throws IOException {
+    String rqi = null;
+    String from = null;
+    String op = null;
+    String sur = null;
+    String con = null;
+    boolean verification = false;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+      case "op":
+        op = readPrimitive(reader);
+        break;
+      case "rqi":
+        rqi = readPrimitive(reader);
+        break;
+      case "fr":
+        from = readPrimitive(reader);
+        break;
+      case "pc":
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+          reader.skipValue();
+          break;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+          if (!"m2m:sgn".equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            continue;
+          }
+          reader.beginObject();
+          while (reader.hasNext()) {
+            switch (reader.nextName()) {
+            case "sur":
+              sur = readPrimitive(reader);
+              break;
+            case "vrq":
+              verification = "true".equals(readPrimitive(reader));
+              break;
+            case "nev":
+              con = readEvent(reader);
+              break;
+            default:
+              reader.skipValue();
+            }
+          }
+          reader.endObject();
+        }
+        reader.endObject();
+        break;
+      default:
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    if (!"5".equals(op))
+      return new AdapterResponse(message, null, AdapterResponse.NO_RSC, null);
+    return new AdapterNotification(message, rqi, from, sur, con, verification);
+  }
+
+  /**
+   * Reads nev/rep/m2m:cin/con, skipping all other members.
+   */
+  @Nullable
+  private static String readEvent(JsonReader reader) throws IOException {
+    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+      reader.skipValue();
+      return null;
+    }
+    String con = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if ("rep".equals(reader.nextName()))
+        con = readContent(reader);
+      else
+        reader.skipValue();
+    }
+    reader.endObject();
+    return con;
+  }
+
+  /**
+   * Reads pc/m2m:cin/con, skipping all other members.
+   */
+  @Nullable
+  private static String readContent(JsonReader reader) throws IOException {
+    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+      reader.skipValue();
+      return null;
+    }
+    String con = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if (!"m2m:cin".equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_OBJECT) {
+        reader.skipValue();
+        continue;
+      }
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if ("con".equals(reader.nextName()))
+          con = readPrimitive(reader);
+        else
+          reader.skipValue();
+      }
+      reader.endObject();
+    }
+    reader.endObject();
+    return con;
+  }
+
+  @Nullable
+  private static String readPrimitive(JsonReader reader) throws IOException {
+    switch (reader.peek()) {
+    case STRING:
+    case NUMBER:
+      return reader.nextString();
+    case BOOLEAN:
+      return Boolean.toString(reader.nextBoolean());
+    default:
+      reader.skipValue();
+      return null;
+    }
+  }
+
+}
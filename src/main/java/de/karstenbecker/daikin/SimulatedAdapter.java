@@ -0,0 +1,253 @@
+package de.karstenbecker.daikin;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WebSocketListener;
+import org.eclipse.jetty.websocket.server.WebSocketHandler;
+import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * A local stand-in for a daikin adapter, to try polling and subscriptions without a heating unit. It answers retrieves
+ * of {@code <item>/la}, accepts new content instances and subscriptions, and lets the sensor values drift, notifying
+ * the subscribers of every change.
+ */
+@NonNullByDefault
+public class SimulatedAdapter implements Closeable {
+  private static final String MNAE = "/[0]/MNAE/";
+
+  private final Logger logger = LoggerFactory.getLogger(SimulatedAdapter.class);
+
+  private final Map<String, JsonPrimitive> values = new ConcurrentHashMap<>();
+  /** The sessions that subscribed to an item */
+  private final Map<String, Set<Session>> subscribers = new ConcurrentHashMap<>();
+  private final AtomicLong rqiCounter = new AtomicLong();
+  private final Random random = new Random();
+  private final Server server;
+  private final ScheduledExecutorService drift = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("simulated-adapter").factory());
+
+  public SimulatedAdapter(int port) {
+    values.put("0/UnitProfile", new JsonPrimitive("{}"));
+    values.put("1/UnitProfile", new JsonPrimitive("{\"Sensor\":[\"IndoorTemperature\",\"OutdoorTemperature\",\"LeavingWaterTemperatureCurrent\"],"
+        + "\"Operation\":{\"Power\":[\"on\",\"standby\"],\"TargetTemperature\":{\"heating\":{\"minValue\":12,\"maxValue\":30,\"stepValue\":1,\"unit\":\"°C\"}}}}"));
+    values.put("2/UnitProfile", new JsonPrimitive("{\"Sensor\":[\"TankTemperature\"],\"Operation\":{\"Power\":[\"on\",\"standby\"]}}"));
+    values.put("1/Sensor/IndoorTemperature", new JsonPrimitive(21.5));
+    values.put("1/Sensor/OutdoorTemperature", new JsonPrimitive(8.0));
+    values.put("1/Sensor/LeavingWaterTemperatureCurrent", new JsonPrimitive(35.0));
+    values.put("1/Operation/Power", new JsonPrimitive("on"));
+    values.put("1/Operation/TargetTemperature", new JsonPrimitive(21));
+    values.put("2/Sensor/TankTemperature", new JsonPrimitive(48));
+    values.put("2/Operation/Power", new JsonPrimitive("on"));
+    server = new Server(port);
+    server.setHandler(new WebSocketHandler() {
+      @Override
+      public void configure(@Nullable WebSocketServletFactory factory) {
+        if (factory != null)
+          factory.setCreator((req, resp) -> new Connection());
+      }
+    });
+  }
+
+  public void start() throws Exception {
+    server.start();
+    drift.scheduleWithFixedDelay(this::drift, 5, 5, TimeUnit.SECONDS);
+    logger.info("Simulated adapter listening on port " + server.getURI().getPort());
+  }
+
+  public void join() throws InterruptedException {
+    server.join();
+  }
+
+  @Override
+  public void close() {
+    drift.shutdownNow();
+    try {
+      server.stop();
+    } catch (Exception e) {
+      logger.warn("Failed to stop simulated adapter", e);
+    }
+  }
+
+  /**
+   * Changes the temperatures a little, the way real sensors jitter.
+   */
+  private void drift() {
+    for (String item : values.keySet()) {
+      JsonPrimitive value = values.get(item);
+      if (!item.contains("/Sensor/") || !value.isNumber() || random.nextInt(3) != 0)
+        continue;
+      double next = Math.round((value.getAsDouble() + random.nextGaussian() * 0.3) * 10) / 10.0;
+      update(item, new JsonPrimitive(next));
+    }
+  }
+
+  private void update(String item, JsonPrimitive value) {
+    values.put(item, value);
+    Set<Session> sessions = subscribers.get(item);
+    if (sessions == null)
+      return;
+    String notification = "{\"m2m:rqp\":{\"op\":5,\"to\":\"" + RequestFrame.ORIGINATOR + "\",\"fr\":\"" + MNAE + item + "\",\"rqi\":\"n"
+        + rqiCounter.incrementAndGet() + "\",\"pc\":{\"m2m:sgn\":{\"nev\":{\"rep\":{\"m2m:cin\":{\"con\":" + value + "}},\"net\":3},\"sur\":\"" + MNAE
+        + item + "/" + RequestFrame.SUBSCRIPTION_NAME + "\"}}}}";
+    for (Session session : sessions) {
+      if (session.isOpen())
+        session.getRemote().sendStringByFuture(notification);
+      else
+        sessions.remove(session);
+    }
+  }
+
+  private String handle(Session session, JsonObject rqp) {
+    String rqi = rqp.has("rqi") ? rqp.get("rqi").getAsString() : "";
+    int op = rqp.has("op") ? rqp.get("op").getAsInt() : 0;
+    String to = rqp.has("to") ? rqp.get("to").getAsString() : "";
+    if (to.equals("/[0]/MNCSE-node/deviceInfo"))
+      return response(rqi, 2000, "\"m2m:dvi\":{\"dlb\":\"Simulated\",\"dty\":\"Simulated\",\"mod\":\"Simulated\",\"fwv\":\"0\",\"swv\":\"0\",\"hwv\":\"0\"}");
+    if (!to.startsWith(MNAE))
+      return response(rqi, 4004, null);
+    String item = to.substring(MNAE.length());
+    JsonObject pc = rqp.has("pc") ? rqp.getAsJsonObject("pc") : new JsonObject();
+    switch (op) {
+    case 1:
+      if (!values.containsKey(item))
+        return response(rqi, 4004, null);
+      if (pc.has("m2m:sub")) {
+        boolean created = subscribers.computeIfAbsent(item, k -> ConcurrentHashMap.newKeySet()).add(session);
+        return response(rqi, created ? 2001 : 4105, null);
+      }
+      JsonElement con = pc.has("m2m:cin") ? pc.getAsJsonObject("m2m:cin").get("con") : null;
+      if (con == null || !con.isJsonPrimitive())
+        return response(rqi, 4000, null);
+      update(item, con.getAsJsonPrimitive());
+      return response(rqi, 2001, null);
+    case 2:
+      if (!item.endsWith("/la")) {
+        if (rqp.has("rcn") && rqp.get("rcn").getAsInt() == 4) {
+          JsonObject tree = tree(item);
+          if (tree != null)
+            return response(rqi, 2000, "\"m2m:cnt\":" + tree);
+        }
+        // A container, the groups are labeled with their function
+        for (String key : values.keySet()) {
+          if (key.startsWith(item + "/"))
+            return response(rqi, 2000, "\"m2m:cnt\":{\"rn\":\"" + item + "\",\"lbl\":\"function/Group" + item + "\"}");
+        }
+        return response(rqi, 4004, null);
+      }
+      JsonPrimitive value = values.get(item.substring(0, item.length() - 3));
+      if (value == null)
+        return response(rqi, 4004, null);
+      return response(rqi, 2000, "\"m2m:cin\":{\"con\":" + value + ",\"cnf\":\"text/plain:0\"}");
+    default:
+      return response(rqi, 4000, null);
+    }
+  }
+
+  /**
+   * @return the container with all containers below it and their latest content instance, or null if there is none
+   */
+  @Nullable
+  private JsonObject tree(String item) {
+    JsonObject cnt = new JsonObject();
+    cnt.addProperty("rn", item.substring(item.lastIndexOf('/') + 1));
+    boolean exists = false;
+    JsonPrimitive value = values.get(item);
+    if (value != null) {
+      JsonObject cin = new JsonObject();
+      cin.add("con", value);
+      cnt.add("m2m:cin", cin);
+      exists = true;
+    }
+    Set<String> children = new TreeSet<>();
+    for (String key : values.keySet()) {
+      if (key.startsWith(item + "/")) {
+        String rest = key.substring(item.length() + 1);
+        children.add(rest.contains("/") ? rest.substring(0, rest.indexOf('/')) : rest);
+      }
+    }
+    if (!children.isEmpty()) {
+      JsonArray array = new JsonArray();
+      for (String child : children) {
+        JsonObject childTree = tree(item + "/" + child);
+        if (childTree != null)
+          array.add(childTree);
+      }
+      cnt.add("m2m:cnt", array);
+      exists = true;
+    }
+    return exists ? cnt : null;
+  }
+
+  private static String response(String rqi, int rsc, @Nullable String content) {
+    JsonObject rsp = new JsonObject();
+    rsp.addProperty("rsc", rsc);
+    rsp.addProperty("rqi", rqi);
+    rsp.addProperty("to", RequestFrame.ORIGINATOR);
+    String message = rsp.toString();
+    if (content != null)
+      message = message.substring(0, message.length() - 1) + ",\"pc\":{" + content + "}}";
+    return "{\"m2m:rsp\":" + message + "}";
+  }
+
+  private class Connection implements WebSocketListener {
+    @Nullable
+    private Session session;
+
+    @Override
+    public void onWebSocketConnect(@Nullable Session session) {
+      this.session = session;
+      logger.info("Client connected");
+    }
+
+    @Override
+    public void onWebSocketClose(int statusCode, @Nullable String reason) {
+      Session closed = session;
+      if (closed != null) {
+        for (Set<Session> sessions : subscribers.values())
+          sessions.remove(closed);
+      }
+    }
+
+    @Override
+    public void onWebSocketError(@Nullable Throwable cause) {
+      logger.debug("Websocket error:", cause);
+    }
+
+    @Override
+    public void onWebSocketBinary(byte @Nullable [] payload, int offset, int len) {
+    }
+
+    @Override
+    public void onWebSocketText(@Nullable String message) {
+      Session current = session;
+      if (message == null || current == null)
+        return;
+      JsonObject frame = JsonParser.parseString(message).getAsJsonObject();
+      // Replies to notifications need no answer
+      if (!frame.has("m2m:rqp"))
+        return;
+      current.getRemote().sendStringByFuture(handle(current, frame.getAsJsonObject("m2m:rqp")));
+    }
+  }
+
+}
@@ -4,42 +4,81 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Random;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+
+import de.karstenbecker.daikin.JfrEvents.AdapterRequest;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.WebSocketListener;
+import org.eclipse.jetty.websocket.api.WebSocketPingPongListener;
+import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.eclipse.jetty.websocket.client.WebSocketClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @NonNullByDefault
-public class WebsocketHelper implements WebSocketListener {
+public class WebsocketHelper implements WebSocketListener, WebSocketPingPongListener {
 
   private final Logger logger = LoggerFactory.getLogger(WebsocketHelper.class);
 
   private WebSocketClient webSocketClient;
 
+  /** Set by the thread that connects, read by the polling and the callback threads */
   @Nullable
-  private Session session;
+  private volatile Session session;
+
+  public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+  private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(5);
+
+  /** Requests that were sent but not answered yet, keyed by their rqi */
+  private final Map<String, CompletableFuture<AdapterResponse>> pendingRequests = new ConcurrentHashMap<>();
+
+  /** Requests that wait for room in the in-flight window */
+  private final Queue<PendingRequest> queuedRequests = new ConcurrentLinkedQueue<>();
+
+  /** Bounds the number of requests that are in flight at the same time */
+  private volatile Semaphore inFlight = new Semaphore(DEFAULT_MAX_IN_FLIGHT);
+
+  private final Object sendLock = new Object();
+
+  /** Receive the content of notifications, keyed by the subscribed item */
+  private final Map<String, Consumer<String>> subscriptions = new ConcurrentHashMap<>();
 
-  private BlockingQueue<String> receivedMessages = new LinkedBlockingQueue<>();
+  /** Time in ms when the last frame was received from the adapter */
+  private volatile long lastActivity = System.currentTimeMillis();
 
   private static final boolean CAPTURE_RESPONSE = false;
 
   @Nullable
   private PrintStream ps = null;
 
+  @Nullable
+  private volatile PollerStats stats;
+
   public WebsocketHelper() throws Exception {
     this(createAndStartClient());
   }
@@ -61,95 +100,385 @@ public class WebsocketHelper implements WebSocketListener {
     }
   }
 
-  synchronized public Optional<JsonObject> doQuery(String item) {
-    Optional<String> response = null;
+  /**
+   * Sets how many requests may be outstanding on the adapter at the same time. This should be called before any request
+   * is issued.
+   */
+  public void setMaxInFlight(int maxInFlight) {
+    inFlight = new Semaphore(Math.max(1, maxInFlight));
+  }
+
+  /**
+   * Records the latency and the outcome of every request from now on.
+   */
+  public void setStats(@Nullable PollerStats stats) {
+    this.stats = stats;
+  }
+
+  public Optional<JsonObject> doQuery(String item) {
+    return await(doQueryAsync(item), item);
+  }
+
+  /**
+   * Queries all items in a pipelined fashion. Up to the configured number of requests are in flight at the same time,
+   * replies are matched to their request by the rqi.
+   *
+   * @return the responses in the order of the given items
+   */
+  public Map<String, Optional<JsonObject>> doQueries(Collection<String> items) {
+    Map<String, CompletableFuture<JsonObject>> replies = new LinkedHashMap<>();
+    for (String item : items) {
+      replies.put(item, doQueryAsync(item));
+    }
+    Map<String, Optional<JsonObject>> result = new LinkedHashMap<>();
+    for (Entry<String, CompletableFuture<JsonObject>> reply : replies.entrySet()) {
+      result.put(reply.getKey(), await(reply.getValue(), reply.getKey()));
+    }
+    return result;
+  }
+
+  /**
+   * Retrieves the item. The future completes with the m2m:rsp object once the reply arrives, or exceptionally when the
+   * request could not be sent or no reply arrived within the default timeout.
+   */
+  public CompletableFuture<JsonObject> doQueryAsync(String item) {
+    return doQueryAsync(item, DEFAULT_TIMEOUT);
+  }
+
+  public CompletableFuture<JsonObject> doQueryAsync(String item, Duration timeout) {
+    return retrieveAsync(item, timeout).thenApply(response -> toResponse(item, response));
+  }
+
+  /**
+   * Retrieves the item without building a Json tree of the reply. This is meant for the polling path, where only rsc
+   * and con are of interest.
+   */
+  public CompletableFuture<AdapterResponse> retrieveAsync(String item) {
+    return retrieveAsync(item, DEFAULT_TIMEOUT);
+  }
+
+  public CompletableFuture<AdapterResponse> retrieveAsync(String item, Duration timeout) {
+    return retrieveAsync(RequestFrame.retrieve(item), timeout);
+  }
+
+  /**
+   * Sends a precompiled request, only the rqi is filled in.
+   */
+  public CompletableFuture<AdapterResponse> retrieveAsync(RequestFrame frame) {
+    return retrieveAsync(frame, DEFAULT_TIMEOUT);
+  }
+
+  public CompletableFuture<AdapterResponse> retrieveAsync(RequestFrame frame, Duration timeout) {
+    return submit(frame, timeout);
+  }
+
+  public CompletableFuture<JsonObject> sendDiscoveryAsync() {
+    return sendDiscoveryAsync(DEFAULT_TIMEOUT);
+  }
+
+  public CompletableFuture<JsonObject> sendDiscoveryAsync(Duration timeout) {
+    return submit(RequestFrame.DEVICE_INFO, timeout).thenApply(response -> {
+      logger.trace("Discovery Response:" + response.message);
+      return toResponse("discovery", response);
+    });
+  }
+
+  /**
+   * Creates a new content instance with the given value. The value must already be valid json, so strings have to be
+   * quoted.
+   */
+  public CompletableFuture<JsonObject> setValueAsync(String item, String value) {
+    return setValueAsync(item, value, DEFAULT_TIMEOUT);
+  }
+
+  public CompletableFuture<JsonObject> setValueAsync(String item, String value, Duration timeout) {
+    RequestFrame frame = RequestFrame.createContentInstance(item, value);
+    logger.debug("Set request:" + frame);
+    return submit(frame, timeout).thenApply(response -> toResponse(item, response));
+  }
+
+  /**
+   * Creates a subscription below the item, for example {@code 1/Sensor/IndoorTemperature}. The listener is called with
+   * the content of every new content instance the adapter notifies about, on the websocket thread. The future completes
+   * with true if the subscription was created or already existed, with false if the adapter rejected it. Subscriptions
+   * live on the adapter, so after a reconnect they only need to be created again if the adapter lost them.
+   */
+  public CompletableFuture<Boolean> subscribeAsync(String item, Consumer<String> listener) {
+    subscriptions.put(item, listener);
+    return submit(RequestFrame.createSubscription(item), DEFAULT_TIMEOUT).thenApply(response -> {
+      // 4105 is a conflict, the subscription exists from an earlier session
+      if (response.rsc == 2001 || response.rsc == 4105)
+        return true;
+      logger.debug("Subscription for " + item + " was rejected with code:" + response.rsc);
+      subscriptions.remove(item);
+      return false;
+    });
+  }
+
+  /**
+   * Stops delivering notifications for the item. The subscription on the adapter is left in place, it is reused by the
+   * next subscribe.
+   */
+  public void unsubscribe(String item) {
+    subscriptions.remove(item);
+  }
+
+  private void handleNotification(AdapterNotification notification) {
+    String rqi = notification.rqi;
+    if (rqi != null)
+      sendText(RequestFrame.notificationResponse(rqi, notification.from));
+    if (notification.verification)
+      return;
+    String item = notification.getSubscribedItem();
+    Consumer<String> listener = item == null ? null : subscriptions.get(item);
+    String con = notification.con;
+    if (listener == null || con == null) {
+      if (logger.isDebugEnabled())
+        logger.debug("Dropping notification without subscription:" + notification.message);
+      return;
+    }
     try {
-      response = sendQuery(item);
-      if (!response.isPresent())
-        return Optional.empty();
-      if (CAPTURE_RESPONSE) {
-        ps.println(item + " " + response.get());
-        ps.flush();
-      }
-      JsonElement ele = JsonParser.parseString(response.get());
-      if (!ele.isJsonObject()) {
-        logger.warn("Json response is not an obj:" + response);
-        return Optional.empty();
-      }
-      JsonObject obj = ele.getAsJsonObject();
-      JsonElement rsp = obj.get("m2m:rsp");
-      if (rsp == null || !rsp.isJsonObject()) {
-        logger.warn("Expected a m2m:rsp Json object, but got:" + response);
-        return Optional.empty();
-      }
-      return Optional.of(rsp.getAsJsonObject());
+      listener.accept(con);
+    } catch (RuntimeException e) {
+      logger.warn("Failed to handle notification for " + item, e);
+    }
+  }
+
+  private void sendText(String text) {
+    Session currentSession = session;
+    if (currentSession == null || !currentSession.isOpen())
+      return;
+    synchronized (sendLock) {
+      currentSession.getRemote().sendString(text, new WriteCallback() {
+        @Override
+        public void writeFailed(@Nullable Throwable x) {
+          logger.debug("Failed to send:" + text, x);
+        }
+
+        @Override
+        public void writeSuccess() {
+        }
+      });
+    }
+  }
+
+  /**
+   * @return the m2m:rsp object of the response
+   * @throws CompletionException if the response is not a m2m:rsp object
+   */
+  private JsonObject toResponse(String item, AdapterResponse response) {
+    JsonObject rsp = response.toJsonObject();
+    if (rsp == null) {
+      throw new CompletionException(new IOException("Expected a m2m:rsp Json object, but got:" + response.message));
+    }
+    return rsp;
+  }
+
+  /**
+   * Returns the raw response string, kept for callers that parse the reply themselves.
+   */
+  public Optional<String> sendQuery(String item) throws IOException, InterruptedException {
+    return doQuery(item).map(rsp -> wrapResponse(rsp));
+  }
+
+  public Optional<String> sendDiscovery() throws IOException, InterruptedException {
+    return await(sendDiscoveryAsync(), "discovery").map(rsp -> wrapResponse(rsp));
+  }
+
+  public Optional<String> setValue(String item, String value) throws IOException, InterruptedException {
+    return await(setValueAsync(item, value), item).map(rsp -> wrapResponse(rsp));
+  }
+
+  private static String wrapResponse(JsonObject rsp) {
+    JsonObject root = new JsonObject();
+    root.add("m2m:rsp", rsp);
+    return root.toString();
+  }
+
+  /**
+   * Blocks until the reply is available and logs why if it is not.
+   */
+  private <T> Optional<T> await(CompletableFuture<T> reply, String item) {
+    try {
+      return Optional.of(reply.get());
     } catch (InterruptedException e) {
-      logger.warn("Did not receive a reply within 5 seconds for:" + item);
+      logger.warn("Interrupted while waiting for a reply for:" + item);
+      Thread.currentThread().interrupt();
       return Optional.empty();
-    } catch (Exception e) {
-      if (response != null)
-        logger.warn("An exception occured while trying to access:" + item + " response was:" + response, e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof TimeoutException)
+        logger.warn("Did not receive a reply in time for:" + item);
       else
-        logger.warn("An exception occured while trying to access:" + item, e);
+        logger.warn("Request failed for:" + item + " " + (cause == null ? e : cause).getMessage());
       return Optional.empty();
     }
   }
 
-  public Optional<String> sendQuery(String item) throws IOException, InterruptedException {
-    String query = "{\"m2m:rqp\":{\"op\":2,\"to\":\"/[0]/MNAE/" + item + "\",\"fr\":\"/OpenHab\",\"rqi\":\"" + randomString() + "\"}}";
-    if (session == null || !session.isOpen()) {
-      logger.warn("Tried to query:" + item + " but session was null or not open");
-      return Optional.empty();
+  private final class PendingRequest {
+    final String rqi;
+    final RequestFrame frame;
+    final CompletableFuture<AdapterResponse> reply = new CompletableFuture<>();
+    final long submittedNanos = System.nanoTime();
+    @Nullable
+    final AdapterRequest event;
+    boolean sent = false;
+    long sentNanos;
+
+    PendingRequest(String rqi, RequestFrame frame) {
+      this.rqi = rqi;
+      this.frame = frame;
+      if (AdapterRequest.isRecording()) {
+        event = new AdapterRequest();
+        event.begin();
+      } else {
+        event = null;
+      }
     }
-    String response;
-    session.getRemote().sendString(query);
-    response = receivedMessages.poll(5, TimeUnit.SECONDS);
-    return Optional.of(response);
   }
 
-  public Optional<String> sendDiscovery() throws IOException, InterruptedException {
-    String query = "{\"m2m:rqp\":{\"op\":2,\"to\":\"/[0]/MNCSE-node/deviceInfo\",\"fr\":\"/OpenHab\",\"rqi\":\"" + randomString() + "\"}}";
-    if (session == null || !session.isOpen()) {
-      logger.warn("Tried to run discovery but session was null or not open");
-      return Optional.empty();
+  /**
+   * Queues the request. It is sent as soon as the in-flight window allows and is registered as pending, so that
+   * {@link #onWebSocketText(String)} can complete it once the reply with the same rqi arrives. The timeout covers the
+   * time in the queue as well as the round trip. This never blocks.
+   */
+  private CompletableFuture<AdapterResponse> submit(RequestFrame frame, Duration timeout) {
+    if (!isConnected()) {
+      logger.warn("Tried to send request to " + frame.getTarget() + " but session was null or not open");
+      return CompletableFuture.failedFuture(new IOException("Session not open"));
     }
-    String response;
-    session.getRemote().sendString(query);
-    response = receivedMessages.poll(5, TimeUnit.SECONDS);
-    logger.trace("Discovery Response:" + response);
-    return Optional.of(response);
+    String rqi = nextRqi();
+    PendingRequest pending = new PendingRequest(rqi, frame);
+    Semaphore window = inFlight;
+    PollerStats currentStats = stats;
+    if (currentStats != null)
+      currentStats.recordRequest();
+    pending.reply.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS).whenComplete((r, t) -> {
+      pendingRequests.remove(rqi);
+      boolean release;
+      long sentNanos;
+      synchronized (pending) {
+        release = pending.sent;
+        sentNanos = pending.sentNanos;
+      }
+      if (currentStats != null)
+        record(currentStats, pending, r, t, sentNanos);
+      AdapterRequest event = pending.event;
+      if (event != null)
+        commit(event, pending, r, t, sentNanos);
+      if (release) {
+        window.release();
+        sendQueued(window);
+      }
+    });
+    queuedRequests.add(pending);
+    sendQueued(window);
+    return pending.reply;
   }
 
-  public Optional<String> setValue(String item, String value) throws IOException, InterruptedException {
-    String request = "{\"m2m:rqp\":{\"op\":1,\"to\":\"/[0]/MNAE/" + item + "\",\"fr\":\"/OpenHab\",\"rqi\":\"" + randomString() + "\",\"ty\":4,\"pc\":{\"m2m:cin\":{\"con\":" + value
-        + ",\"cnf\":\"text/plain:0\"}}}}";
-    System.out.println(request);
-    if (session == null || !session.isOpen()) {
-      logger.warn("Tried to query:" + item + " but session was null or not open");
-      return Optional.empty();
+  private static void record(PollerStats stats, PendingRequest pending, @Nullable AdapterResponse response, @Nullable Throwable t, long sentNanos) {
+    if (response != null) {
+      stats.recordReply(pending.frame.getTarget(), response.rsc, sentNanos - pending.submittedNanos, System.nanoTime() - sentNanos);
+      return;
     }
-    String response;
-    session.getRemote().sendString(request);
-    response = receivedMessages.poll(5, TimeUnit.SECONDS);
-    return Optional.of(response);
+    Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+    if (cause instanceof TimeoutException)
+      stats.recordTimeout();
+    else
+      stats.recordFailure();
+  }
 
+  private static void commit(AdapterRequest event, PendingRequest pending, @Nullable AdapterResponse response, @Nullable Throwable t,
+      long sentNanos) {
+    event.end();
+    if (!event.shouldCommit())
+      return;
+    event.target = pending.frame.getTarget();
+    event.queued = (sentNanos == 0 ? System.nanoTime() : sentNanos) - pending.submittedNanos;
+    if (response != null) {
+      event.outcome = "reply";
+      event.rsc = response.rsc;
+      event.replyBytes = response.message.length();
+    } else {
+      Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+      event.outcome = cause instanceof TimeoutException ? "timeout" : "failed";
+    }
+    event.commit();
   }
 
-  private static Random random = new Random();
+  /**
+   * Sends queued requests while there is room in the in-flight window.
+   */
+  private void sendQueued(Semaphore window) {
+    while (!queuedRequests.isEmpty() && window.tryAcquire()) {
+      PendingRequest next = queuedRequests.poll();
+      if (next == null) {
+        window.release();
+        continue;
+      }
+      synchronized (next) {
+        if (next.reply.isDone()) {
+          // Timed out while waiting in the queue
+          window.release();
+          continue;
+        }
+        next.sent = true;
+        next.sentNanos = System.nanoTime();
+      }
+      send(next);
+    }
+  }
 
-  private String randomString() {
-    return Long.toHexString(random.nextLong());
+  private void send(PendingRequest pending) {
+    Session currentSession = session;
+    if (currentSession == null || !currentSession.isOpen()) {
+      pending.reply.completeExceptionally(new IOException("Session closed before sending request to " + pending.frame.getTarget()));
+      return;
+    }
+    pendingRequests.put(pending.rqi, pending.reply);
+    if (pending.reply.isDone()) {
+      pendingRequests.remove(pending.rqi);
+      return;
+    }
+    String text = pending.frame.build(pending.rqi);
+    AdapterRequest event = pending.event;
+    if (event != null)
+      event.requestBytes = text.length();
+    synchronized (sendLock) {
+      currentSession.getRemote().sendString(text, new WriteCallback() {
+        @Override
+        public void writeFailed(@Nullable Throwable x) {
+          pending.reply.completeExceptionally(x == null ? new IOException("Write failed") : x);
+        }
+
+        @Override
+        public void writeSuccess() {
+        }
+      });
+    }
+  }
+
+  /**
+   * Request ids only need to be unique within a session. The counter starts at a random value, so that a late reply
+   * from a previous run of the service can not be mistaken for a reply to a new request.
+   */
+  private final AtomicLong rqiCounter = new AtomicLong(new Random().nextInt() & 0xffffffffL);
+
+  private String nextRqi() {
+    return Long.toHexString(rqiCounter.incrementAndGet());
   }
 
   @Override
   public void onWebSocketClose(int statusCode, @Nullable String reason) {
     logger.trace("Websocket closed with status:" + statusCode);
+    failPendingRequests();
     if (CAPTURE_RESPONSE)
       ps.close();
   }
 
   @Override
   public void onWebSocketConnect(@Nullable Session session) {
+    lastActivity = System.currentTimeMillis();
     logger.trace("Websocket connected to: " + session.getRemoteAddress());
   }
 
@@ -165,15 +494,76 @@ public class WebsocketHelper implements WebSocketListener {
 
   @Override
   public void onWebSocketText(@Nullable String message) {
+    lastActivity = System.currentTimeMillis();
+    if (message == null)
+      return;
+    if (CAPTURE_RESPONSE) {
+      ps.println(message);
+      ps.flush();
+    }
+    AdapterResponse response;
+    long start = System.nanoTime();
     try {
-      if (message != null)
-        receivedMessages.put(message);
-    } catch (InterruptedException e) {
-      // This is so highly unlikely...
-      logger.debug("Error while putting message", e);
+      response = ResponseDecoder.decode(message);
+    } catch (IOException e) {
+      logger.warn("Dropping message that could not be decoded:" + message, e);
+      return;
+    }
+    PollerStats currentStats = stats;
+    if (currentStats != null)
+      currentStats.recordStage(PollerStats.Stage.PARSE, System.nanoTime() - start);
+    if (response instanceof AdapterNotification notification) {
+      handleNotification(notification);
+      return;
+    }
+    String rqi = response.rqi;
+    CompletableFuture<AdapterResponse> reply = rqi == null ? null : pendingRequests.get(rqi);
+    if (reply == null) {
+      // Most likely a late reply to a request that already timed out
+      if (logger.isDebugEnabled())
+        logger.debug("Dropping message without pending request:" + message);
+      return;
+    }
+    reply.complete(response);
+  }
+
+  @Override
+  public void onWebSocketPing(@Nullable ByteBuffer payload) {
+    lastActivity = System.currentTimeMillis();
+  }
+
+  @Override
+  public void onWebSocketPong(@Nullable ByteBuffer payload) {
+    lastActivity = System.currentTimeMillis();
+  }
+
+  /**
+   * Sends a ping to the adapter. The pong, as well as any other frame, counts as activity.
+   */
+  public boolean sendPing() {
+    Session currentSession = session;
+    if (currentSession == null || !currentSession.isOpen())
+      return false;
+    try {
+      synchronized (sendLock) {
+        currentSession.getRemote().sendPing(ByteBuffer.allocate(0));
+      }
+      return true;
+    } catch (IOException e) {
+      logger.debug("Failed to send ping", e);
+      return false;
     }
   }
 
+  public long getLastActivity() {
+    return lastActivity;
+  }
+
+  public boolean isConnected() {
+    Session currentSession = session;
+    return currentSession != null && currentSession.isOpen();
+  }
+
   public boolean connect(URI url) {
     try {
       Future<Session> sessionFuture = webSocketClient.connect(this, url);
@@ -186,8 +576,20 @@ public class WebsocketHelper implements WebSocketListener {
   }
 
   public void disconnect() {
-    if (session != null)
-      session.close();
+    Session currentSession = session;
+    if (currentSession != null)
+      currentSession.close();
+    failPendingRequests();
+  }
+
+  private void failPendingRequests() {
+    PendingRequest queued;
+    while ((queued = queuedRequests.poll()) != null) {
+      queued.reply.completeExceptionally(new IOException("Session closed"));
+    }
+    for (CompletableFuture<AdapterResponse> reply : pendingRequests.values()) {
+      reply.completeExceptionally(new IOException("Session closed"));
+    }
   }
 
 }
\ No newline at end of file
@@ -139,7 +139,7 @@ class CustomDialog extends JDialog implements ActionListener, PropertyChangeList
 
 			} else { // user closed dialog or clicked cancel
 				textField.setEditable(false);
-				new Thread(() -> {
+				Thread.ofVirtual().name("daikin-mdns").start(() -> {
 					try {
 						typedText = dd.discoverIP();
 						textField.setText(typedText);
@@ -147,7 +147,7 @@ class CustomDialog extends JDialog implements ActionListener, PropertyChangeList
 					} catch (Exception e1) {
 						e1.printStackTrace();
 					}
-				}).start();
+				});
 			}
 		}
 	}
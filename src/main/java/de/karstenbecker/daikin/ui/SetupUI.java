@@ -55,7 +55,7 @@ public class SetupUI extends JPanel {
         this.settings = settings;
         this.endPoints = endPoints;
         model = new BeanPropertyModel<DaikinProperty>(DaikinProperty.class, settings.getProperties(), "pollInterval",
-                "name", "unit", "format", "dataType", "value", "postProcessing");
+                "pollIntervalSeconds", "name", "unit", "format", "dataType", "value", "postProcessing");
         final JTable table = new JTable(model);
         table.setPreferredScrollableViewportSize(new Dimension(500, 70));
         table.setFillsViewportHeight(true);
@@ -147,7 +147,7 @@ public class SetupUI extends JPanel {
         daikinIpAddressText.setEditable(false);
         discoverBtn.setEnabled(false);
         try {
-            new Thread(() -> {
+            Thread.ofVirtual().name("daikin-discovery").start(() -> {
                 try {
                     runDiscovery();
                 } catch (Exception e1) {
@@ -157,7 +157,7 @@ public class SetupUI extends JPanel {
                     discoverBtn.setEnabled(true);
                     daikinIpAddressText.setEditable(true);
                 }
-            }).start();
+            });
         } catch (Exception e1) {
             e1.printStackTrace();
         }
@@ -0,0 +1,135 @@
+package de.karstenbecker.daikin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ConsumptionCountersTest {
+  private static final LocalDate MONDAY = LocalDate.of(2024, 3, 4);
+  private static final LocalDate TUESDAY = MONDAY.plusDays(1);
+  private static final LocalDate WEDNESDAY = MONDAY.plusDays(2);
+
+  @TempDir
+  Path dir;
+
+  /**
+   * A D array with the given slots of yesterday and today, the other slots are null.
+   */
+  private static double[] day(double[] yesterday, double[] today) {
+    double[] values = new double[2 * ConsumptionCounters.DAY_SLOTS];
+    Arrays.fill(values, Double.NaN);
+    System.arraycopy(yesterday, 0, values, 0, yesterday.length);
+    System.arraycopy(today, 0, values, ConsumptionCounters.DAY_SLOTS, today.length);
+    return values;
+  }
+
+  @Test
+  void addsCompleteDaysAtMidnight() {
+    ConsumptionCounters.Counter counter = new ConsumptionCounters.Counter("test");
+    double[] monday = { 1, 0, 0, 2, 3, 1, 1, 2, 4, 1, 0, 1 };
+    assertEquals(1, counter.update(day(new double[0], Arrays.copyOf(monday, 1)), MONDAY));
+    assertEquals(6, counter.update(day(new double[0], Arrays.copyOf(monday, 5)), MONDAY));
+    assertEquals(16, counter.update(day(new double[0], monday), MONDAY));
+    // The array shifted, monday is now yesterday
+    assertEquals(16, counter.update(day(monday, new double[0]), TUESDAY));
+    assertEquals(18, counter.update(day(monday, new double[] { 2 }), TUESDAY));
+    assertEquals(21, counter.update(day(monday, new double[] { 2, 3 }), TUESDAY));
+    double[] tuesday = { 2, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 };
+    assertEquals(21, counter.update(day(monday, tuesday), TUESDAY));
+    assertEquals(22, counter.update(day(tuesday, new double[] { 1 }), WEDNESDAY));
+  }
+
+  @Test
+  void rollsOverWhenTodayStartsWithASlot() {
+    ConsumptionCounters.Counter counter = new ConsumptionCounters.Counter("test");
+    double[] monday = { 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1 };
+    assertEquals(12, counter.update(day(new double[0], monday), MONDAY));
+    assertEquals(14, counter.update(day(monday, new double[] { 2 }), TUESDAY));
+    assertEquals(14, counter.update(day(monday, new double[] { 2 }), TUESDAY));
+  }
+
+  /**
+   * Polled once a day at noon, so today always has the same number of slots.
+   */
+  @Test
+  void rollsOverWithDailyPolling() {
+    ConsumptionCounters.Counter counter = new ConsumptionCounters.Counter("test");
+    double[] monday = { 1, 1, 1, 1, 1, 1, 2, 2, 2, 2, 2, 2 };
+    double[] tuesday = { 3, 3, 3, 3, 3, 3, 1, 1, 1, 1, 1, 1 };
+    assertEquals(6, counter.update(day(new double[0], Arrays.copyOf(monday, 6)), MONDAY));
+    assertEquals(18 + 18, counter.update(day(monday, Arrays.copyOf(tuesday, 6)), TUESDAY));
+    assertEquals(18 + 24 + 1, counter.update(day(tuesday, new double[] { 1, 0, 0, 0, 0, 0 }), WEDNESDAY));
+  }
+
+  @Test
+  void countsOnlyKnownDaysAfterAGap() {
+    ConsumptionCounters.Counter counter = new ConsumptionCounters.Counter("test");
+    assertEquals(5, counter.update(day(new double[0], new double[] { 2, 3 }), MONDAY));
+    // Thursday, the rest of monday, tuesday and wednesday before the array shifted in are not known
+    double[] wednesday = { 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1 };
+    assertEquals(5 + 12 + 4, counter.update(day(wednesday, new double[] { 4 }), MONDAY.plusDays(3)));
+    assertEquals(5 + 12 + 6, counter.update(day(wednesday, new double[] { 4, 2 }), MONDAY.plusDays(3)));
+  }
+
+  @Test
+  void ignoresUpdatesFromAnEarlierDay() {
+    ConsumptionCounters.Counter counter = new ConsumptionCounters.Counter("test");
+    assertEquals(5, counter.update(day(new double[0], new double[] { 2, 3 }), TUESDAY));
+    assertEquals(5, counter.update(day(new double[0], new double[] { 7 }), MONDAY));
+    assertEquals(6, counter.update(day(new double[0], new double[] { 2, 3, 1 }), TUESDAY));
+  }
+
+  @Test
+  void keepsFractions() {
+    ConsumptionCounters.Counter counter = new ConsumptionCounters.Counter("test");
+    double[] monday = { 0.5, 0.25, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0.25 };
+    assertEquals(1, counter.update(day(new double[0], monday), MONDAY));
+    assertEquals(1.5, counter.update(day(monday, new double[] { 0.5 }), TUESDAY));
+  }
+
+  @Test
+  void neverGoesBack() {
+    ConsumptionCounters.Counter counter = new ConsumptionCounters.Counter("test");
+    assertEquals(5, counter.update(day(new double[0], new double[] { 2, 3 }), MONDAY));
+    // The adapter corrected the last slot
+    assertEquals(5, counter.update(day(new double[0], new double[] { 2, 1 }), MONDAY));
+    assertEquals(6, counter.update(day(new double[0], new double[] { 2, 1, 3 }), MONDAY));
+  }
+
+  @Test
+  void continuesAfterReload() throws IOException {
+    File file = dir.resolve("counters.bin").toFile();
+    ConsumptionCounters counters = ConsumptionCounters.load(file);
+    double[] monday = { 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1 };
+    assertEquals(12, counters.update(counters.get("1/Consumption/Electrical/Heating"), day(new double[0], monday), MONDAY));
+    assertEquals(3, counters.update(counters.get("1/Consumption/Electrical/Cooling"), day(new double[0], new double[] { 3 }), MONDAY));
+
+    ConsumptionCounters reloaded = ConsumptionCounters.load(file);
+    ConsumptionCounters.Counter heating = reloaded.get("1/Consumption/Electrical/Heating");
+    assertEquals(12, heating.total);
+    assertEquals(MONDAY.toEpochDay(), heating.day);
+    // The midnight shift is only seen after the restart
+    assertEquals(14, reloaded.update(heating, day(monday, new double[] { 2 }), TUESDAY));
+    assertEquals(3, reloaded.get("1/Consumption/Electrical/Cooling").total);
+    assertEquals(14, ConsumptionCounters.load(file).get("1/Consumption/Electrical/Heating").total);
+  }
+
+  @Test
+  void startsAtZeroWithDamagedFile() throws IOException {
+    File file = dir.resolve("counters.bin").toFile();
+    Files.write(file.toPath(), new byte[] { 0, 0, 0, 3, 0, 0, 0, 5, 0 });
+    ConsumptionCounters counters = ConsumptionCounters.load(file);
+    assertEquals(0, counters.get("1/Consumption/Electrical/Heating").total);
+    assertEquals(4, counters.update(counters.get("1/Consumption/Electrical/Heating"), day(new double[0], new double[] { 4 }), MONDAY));
+    assertEquals(4, ConsumptionCounters.load(file).get("1/Consumption/Electrical/Heating").total);
+  }
+
+}
@@ -0,0 +1,37 @@
+package de.karstenbecker.daikin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import de.karstenbecker.daikin.DaikinProperty.DataType;
+
+class DaikinPollerTest {
+
+  /**
+   * The homie property is false for 0 and true otherwise, the metric has to agree.
+   */
+  @Test
+  void mapsBooleansLikeHomie() {
+    assertEquals("0", DaikinPoller.metricValue(DataType.BOOLEAN, "0"));
+    assertEquals("1", DaikinPoller.metricValue(DataType.BOOLEAN, "1"));
+    assertEquals("1", DaikinPoller.metricValue(DataType.BOOLEAN, "2"));
+  }
+
+  @Test
+  void mapsNumbers() {
+    assertEquals("21.5", DaikinPoller.metricValue(DataType.FLOAT, "21.5"));
+    assertEquals("21", DaikinPoller.metricValue(DataType.INTEGER, "21.5"));
+    assertEquals("-3", DaikinPoller.metricValue(DataType.INTEGER, "-3"));
+    assertThrows(NumberFormatException.class, () -> DaikinPoller.metricValue(DataType.FLOAT, "on"));
+  }
+
+  @Test
+  void skipsOtherTypes() {
+    assertNull(DaikinPoller.metricValue(DataType.STRING, "21"));
+    assertNull(DaikinPoller.metricValue(DataType.ENUM, "heating"));
+  }
+
+}
@@ -0,0 +1,70 @@
+package de.karstenbecker.daikin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+class DiscoveryPlannerTest {
+  private final List<String> queried = new ArrayList<>();
+
+  /**
+   * Answers 2000 for the given items and 4004 for all others.
+   */
+  private Map<String, Optional<JsonObject>> query(Collection<String> items, Set<String> existing) {
+    Map<String, Optional<JsonObject>> replies = new LinkedHashMap<>();
+    for (String item : items) {
+      queried.add(item);
+      JsonObject rsp = new JsonObject();
+      rsp.addProperty("rsc", existing.contains(item) ? 2000 : 4004);
+      replies.put(item, Optional.of(rsp));
+    }
+    return replies;
+  }
+
+  private static JsonObject profile(String json) {
+    return JsonParser.parseString(json).getAsJsonObject();
+  }
+
+  @Test
+  void skipsEndpointsFoundInTheProfile() {
+    DiscoveryPlanner planner = new DiscoveryPlanner("1", profile("{\"Sensor\":[\"IndoorTemperature\"]}"),
+        List.of("1/sensor/indoortemperature", "1/Sensor/OutdoorTemperature"));
+    planner.run(items -> query(items, Set.of("1/Sensor/IndoorTemperature/la", "1/Sensor/OutdoorTemperature/la")));
+    assertEquals(List.of("1/Sensor/OutdoorTemperature"), planner.getProbedEndpoints());
+    assertFalse(queried.contains("1/sensor/indoortemperature/la"));
+  }
+
+  @Test
+  void probesEndpointsBelowProfileContent() {
+    // The profile node below a node with content is never probed, so the endpoint has to be
+    DiscoveryPlanner planner = new DiscoveryPlanner("1", profile("{\"Operation\":{\"Power\":[\"Mode\"]}}"), List.of("1/operation/power/mode"));
+    planner.run(items -> query(items, Set.of("1/Operation/Power/la", "1/operation/power/mode/la")));
+    assertEquals(List.of("1/operation/power/mode"), planner.getProbedEndpoints());
+    assertTrue(queried.contains("1/operation/power/mode/la"));
+    assertFalse(queried.contains("1/Operation/Power/Mode/la"));
+  }
+
+  @Test
+  void probesEndpointsWhenProfileSpellingIsNotFound() {
+    DiscoveryPlanner planner = new DiscoveryPlanner("1", profile("{\"Sensor\":[\"IndoorTemperature\"]}"),
+        List.of("1/Sensor/IndoorTemperature", "1/Sensor/indoorTemperature"));
+    planner.run(items -> query(items, Set.of("1/Sensor/indoorTemperature/la")));
+    // The first endpoint spelling was answered by the profile probe already
+    assertEquals(List.of("1/Sensor/IndoorTemperature", "1/Sensor/indoorTemperature"), planner.getProbedEndpoints());
+    assertEquals(1, queried.stream().filter("1/Sensor/IndoorTemperature/la"::equals).count());
+  }
+
+}
@@ -0,0 +1,59 @@
+package de.karstenbecker.daikin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class InfluxLineEncoderTest {
+  private static final long T = 1_700_000_000_000L;
+
+  @Test
+  void sharesLinesByTimestamp() {
+    InfluxLineEncoder encoder = new InfluxLineEncoder("daikin data", "home,unit", 0, 0);
+    encoder.addField("temp", "21.5", T);
+    encoder.addField("name", InfluxLineEncoder.quote("a \"b\""), T);
+    encoder.addField("temp", "22", T + 1);
+    assertEquals("daikin\\ data,qfn=home\\,unit temp=21.5,name=\"a \\\"b\\\"\" 1700000000000000000\n"
+        + "daikin\\ data,qfn=home\\,unit temp=22 1700000000001000000", new String(encoder.drain(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void sendsEveryLineWithoutBounds() {
+    InfluxLineEncoder encoder = new InfluxLineEncoder("daikin", "home", 0, 0);
+    assertFalse(encoder.isComplete(T));
+    encoder.add(Map.of("temp", "21"), T);
+    assertTrue(encoder.isComplete(T));
+    assertTrue(encoder.getDeadline() <= System.currentTimeMillis());
+  }
+
+  @Test
+  void batchesBySizeOnly() {
+    InfluxLineEncoder encoder = new InfluxLineEncoder("daikin", "home", 100, 0);
+    encoder.addField("temp", "21", T);
+    assertFalse(encoder.isComplete(Long.MAX_VALUE / 2));
+    assertEquals(Long.MAX_VALUE, encoder.getDeadline());
+    for (int i = 1; i < 5; i++) {
+      encoder.addField("temp", "21", T + i);
+    }
+    assertTrue(encoder.isComplete(0));
+  }
+
+  @Test
+  void batchesByAgeOnly() {
+    InfluxLineEncoder encoder = new InfluxLineEncoder("daikin", "home", 0, 60_000);
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < 100; i++) {
+      encoder.addField("temp", "21", T + i);
+    }
+    long deadline = encoder.getDeadline();
+    assertTrue(deadline >= start + 60_000);
+    assertFalse(encoder.isComplete(deadline - 1));
+    assertTrue(encoder.isComplete(deadline));
+  }
+
+}
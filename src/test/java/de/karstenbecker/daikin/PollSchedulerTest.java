@@ -0,0 +1,112 @@
+package de.karstenbecker.daikin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class PollSchedulerTest {
+  private static final long START = 1_700_000_000_000L;
+  private static final long SECOND = 1000;
+
+  private static <T> List<T> items(List<PollScheduler.Entry<T>> entries) {
+    List<T> items = new ArrayList<>();
+    for (PollScheduler.Entry<T> entry : entries) {
+      items.add(entry.item);
+    }
+    return items;
+  }
+
+  @Test
+  void returnsPastEntriesImmediately() {
+    PollScheduler<String> scheduler = new PollScheduler<>(START);
+    scheduler.schedule("late", START - 5 * SECOND);
+    scheduler.schedule("now", START);
+    assertEquals(START, scheduler.nextDueMillis());
+    assertEquals(List.of("late", "now"), items(scheduler.advance(START)));
+    assertEquals(0, scheduler.size());
+    assertEquals(Long.MAX_VALUE, scheduler.nextDueMillis());
+  }
+
+  @Test
+  void ordersEntriesByDueTime() {
+    PollScheduler<String> scheduler = new PollScheduler<>(START);
+    scheduler.schedule("c", START + 3 * SECOND);
+    scheduler.schedule("a", START + SECOND);
+    scheduler.schedule("b", START + 2 * SECOND);
+    assertEquals(List.of("a", "b", "c"), items(scheduler.advance(START + 10 * SECOND)));
+  }
+
+  /**
+   * The delays cross the boundaries of all four levels, 64s, 4096s, 262144s and the parking of entries beyond the last
+   * level. Every entry has to come out exactly at its second, also when the wheel jumps.
+   */
+  @Test
+  void cascadesAcrossLevels() {
+    long[] delays = { 1, 63, 64, 65, 127, 4095, 4096, 4097, 5000, 262143, 262144, 300000, 16_777_215, 16_777_216, 20_000_000 };
+    PollScheduler<String> scheduler = new PollScheduler<>(START);
+    for (long delay : delays) {
+      scheduler.schedule(Long.toString(delay), START + delay * SECOND);
+    }
+    assertEquals(delays.length, scheduler.size());
+    for (long delay : delays) {
+      long due = START + delay * SECOND;
+      assertEquals(due, scheduler.nextDueMillis(), "next due before " + delay);
+      assertEquals(List.of(), items(scheduler.advance(due - 1)), "before " + delay);
+      assertEquals(List.of(Long.toString(delay)), items(scheduler.advance(due)), "at " + delay);
+    }
+    assertEquals(0, scheduler.size());
+  }
+
+  @Test
+  void rescheduledEntriesCascadeAgain() {
+    PollScheduler<String> scheduler = new PollScheduler<>(START);
+    long now = START;
+    scheduler.schedule("item", now + 5000 * SECOND);
+    for (int round = 0; round < 3; round++) {
+      now += 5000 * SECOND;
+      assertEquals(List.of(), items(scheduler.advance(now - SECOND)));
+      assertEquals(List.of("item"), items(scheduler.advance(now)));
+      scheduler.schedule("item", now + 5000 * SECOND);
+    }
+  }
+
+  /**
+   * Entries are due at the first full second after their due time.
+   */
+  @Test
+  void matchesNaiveScheduler() {
+    Random random = new Random(42);
+    PollScheduler<Integer> scheduler = new PollScheduler<>(START);
+    List<long[]> pending = new ArrayList<>();
+    int next = 0;
+    long now = START;
+    for (int step = 0; step < 2000; step++) {
+      for (int i = random.nextInt(3); i > 0; i--) {
+        long due = now + (long) (Math.pow(10, random.nextDouble() * 7.5) * SECOND) - 500;
+        scheduler.schedule(next, due);
+        pending.add(new long[] { next++, due });
+      }
+      now += (long) (Math.pow(10, random.nextDouble() * 6) * SECOND);
+      Set<Integer> expected = new HashSet<>();
+      for (long[] entry : pending) {
+        if ((entry[1] + SECOND - 1) / SECOND <= now / SECOND)
+          expected.add((int) entry[0]);
+      }
+      pending.removeIf(entry -> expected.contains((int) entry[0]));
+      List<PollScheduler.Entry<Integer>> due = scheduler.advance(now);
+      assertEquals(expected, new HashSet<>(items(due)), "step " + step);
+      for (int i = 1; i < due.size(); i++) {
+        assertTrue(due.get(i - 1).dueMillis <= due.get(i).dueMillis);
+      }
+      assertEquals(pending.size(), scheduler.size());
+    }
+  }
+
+}
@@ -0,0 +1,150 @@
+package de.karstenbecker.daikin;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PublishJournalTest {
+  @TempDir
+  Path dir;
+
+  private static byte[] bytes(String message) {
+    return message.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static List<String> drain(PublishJournal journal) throws IOException {
+    List<String> messages = new ArrayList<>();
+    byte[] message;
+    while ((message = journal.peek()) != null) {
+      messages.add(new String(message, StandardCharsets.UTF_8));
+      journal.remove();
+    }
+    return messages;
+  }
+
+  private List<Path> segments() throws IOException {
+    try (Stream<Path> list = Files.list(dir)) {
+      return list.sorted().toList();
+    }
+  }
+
+  @Test
+  void readsMessagesInOrder() throws IOException {
+    try (PublishJournal journal = PublishJournal.open(dir, 4096)) {
+      assertTrue(journal.isEmpty());
+      assertNull(journal.peek());
+      journal.append(bytes("a"));
+      journal.append(new byte[0]);
+      journal.append(bytes("b"));
+      assertEquals(2, journal.getPendingMessages());
+      assertArrayEquals(bytes("a"), journal.peek());
+      assertArrayEquals(bytes("a"), journal.peek());
+      assertEquals(List.of("a", "b"), drain(journal));
+      assertTrue(journal.isEmpty());
+    }
+  }
+
+  @Test
+  void replaysUnreadMessagesAfterReopen() throws IOException {
+    try (PublishJournal journal = PublishJournal.open(dir, 64)) {
+      for (int i = 0; i < 10; i++) {
+        journal.append(bytes("message " + i));
+      }
+      journal.peek();
+      journal.remove();
+      journal.peek();
+      journal.remove();
+    }
+    try (PublishJournal journal = PublishJournal.open(dir, 64)) {
+      assertEquals(8, journal.getPendingMessages());
+      journal.append(bytes("after reopen"));
+      assertEquals(List.of("message 2", "message 3", "message 4", "message 5", "message 6", "message 7", "message 8", "message 9", "after reopen"),
+          drain(journal));
+    }
+    try (PublishJournal journal = PublishJournal.open(dir, 64)) {
+      assertTrue(journal.isEmpty());
+    }
+  }
+
+  @Test
+  void deletesSegmentsOnceRead() throws IOException {
+    try (PublishJournal journal = PublishJournal.open(dir, 64)) {
+      for (int i = 0; i < 10; i++) {
+        journal.append(bytes("message " + i));
+      }
+      // A message larger than a segment gets one of its own
+      journal.append(new byte[200]);
+      journal.append(bytes("last"));
+      assertTrue(segments().size() > 3);
+      List<String> messages = drain(journal);
+      assertEquals(12, messages.size());
+      assertEquals(200, messages.get(10).length());
+      assertEquals("last", messages.get(11));
+      // The segment that is written to is kept
+      assertEquals(1, segments().size());
+    }
+  }
+
+  @Test
+  void dropsPartiallyWrittenMessage() throws IOException {
+    try (PublishJournal journal = PublishJournal.open(dir, 4096)) {
+      journal.append(bytes("first"));
+      journal.append(bytes("second"));
+      journal.append(bytes("torn"));
+    }
+    Path segment = segments().get(0);
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 2);
+    }
+    try (PublishJournal journal = PublishJournal.open(dir, 4096)) {
+      assertEquals(2, journal.getPendingMessages());
+      journal.append(bytes("third"));
+      assertEquals(List.of("first", "second", "third"), drain(journal));
+    }
+  }
+
+  @Test
+  void stopsAtMessageWithWrongChecksum() throws IOException {
+    try (PublishJournal journal = PublishJournal.open(dir, 4096)) {
+      journal.append(bytes("first"));
+      journal.append(bytes("second"));
+      journal.append(bytes("third"));
+    }
+    Path segment = segments().get(0);
+    byte[] content = Files.readAllBytes(segment);
+    // The header, the first message with its length and crc, and the length and crc of the second one
+    content[16 + 8 + 5 + 8] ^= 1;
+    Files.write(segment, content);
+    try (PublishJournal journal = PublishJournal.open(dir, 4096)) {
+      assertEquals(1, journal.getPendingMessages());
+      assertEquals(List.of("first"), drain(journal));
+    }
+  }
+
+  @Test
+  void ignoresOtherFiles() throws IOException {
+    Files.write(dir.resolve("0000000000000007.journal"), bytes("not a journal"));
+    Files.write(dir.resolve("notes.txt"), bytes("hello"));
+    try (PublishJournal journal = PublishJournal.open(dir, 4096)) {
+      assertTrue(journal.isEmpty());
+      journal.append(bytes("a"));
+      assertEquals(List.of("a"), drain(journal));
+    }
+    assertTrue(Files.exists(dir.resolve("0000000000000008.journal")));
+  }
+
+}
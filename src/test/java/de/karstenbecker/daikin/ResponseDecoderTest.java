@@ -0,0 +1,90 @@
+package de.karstenbecker.daikin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+class ResponseDecoderTest {
+  private static final String RESPONSE = "{\"m2m:rsp\":{\"rsc\":2000,\"rqi\":\"r1\",\"pc\":{\"m2m:cin\":{\"rn\":\"0001\",\"con\":21.5,\"st\":3}},\"to\":\"/S\"}}";
+
+  @Test
+  void decodesResponse() throws IOException {
+    AdapterResponse response = ResponseDecoder.decode(RESPONSE);
+    assertEquals("r1", response.rqi);
+    assertEquals(2000, response.rsc);
+    assertEquals("21.5", response.con);
+    assertEquals(RESPONSE, response.message);
+  }
+
+  @Test
+  void decodesResponseWithoutContent() throws IOException {
+    AdapterResponse response = ResponseDecoder.decode("{\"m2m:rsp\":{\"rqi\":\"r2\",\"rsc\":\"4004\"}}");
+    assertEquals("r2", response.rqi);
+    assertEquals(4004, response.rsc);
+    assertNull(response.con);
+  }
+
+  @Test
+  void skipsStructuredContent() throws IOException {
+    AdapterResponse response = ResponseDecoder.decode("{\"m2m:rsp\":{\"rsc\":2000,\"pc\":{\"m2m:cin\":{\"con\":{\"a\":[1,2]}}},\"rqi\":\"r3\"}}");
+    assertEquals("r3", response.rqi);
+    assertNull(response.con);
+  }
+
+  @Test
+  void ignoresMessagesWithoutResponse() throws IOException {
+    assertEquals(AdapterResponse.NO_RSC, ResponseDecoder.decode("[1,2]").rsc);
+    AdapterResponse response = ResponseDecoder.decode("{\"other\":{\"rsc\":2000}}");
+    assertEquals(AdapterResponse.NO_RSC, response.rsc);
+    assertNull(response.rqi);
+  }
+
+  @Test
+  void rejectsTruncatedFrames() {
+    for (int length = 1; length < RESPONSE.length(); length++) {
+      String partial = RESPONSE.substring(0, length);
+      assertThrows(IOException.class, () -> ResponseDecoder.decode(partial), partial);
+    }
+  }
+
+  @Test
+  void rejectsMalformedFrames() {
+    assertThrows(IOException.class, () -> ResponseDecoder.decode("{\"m2m:rsp\":{\"rsc\":\"ok\"}}"));
+    assertThrows(IOException.class, () -> ResponseDecoder.decode("{\"m2m:rsp\":{\"rsc\":2000,}}"));
+  }
+
+  @Test
+  void decodesNotification() throws IOException {
+    String message = "{\"m2m:rqp\":{\"op\":5,\"to\":\"/S\",\"fr\":\"/[0]/MNAE/1/Sensor/IndoorTemperature/la\",\"rqi\":\"n7\",\"pc\":{\"m2m:sgn\":{\"nev\":{\"rep\":{\"m2m:cin\":{\"con\":22}},\"net\":3},\"sur\":\"/[0]/MNAE/1/Sensor/IndoorTemperature/sub\"}}}}";
+    AdapterNotification notification = assertInstanceOf(AdapterNotification.class, ResponseDecoder.decode(message));
+    assertEquals("n7", notification.rqi);
+    assertEquals("22", notification.con);
+    assertEquals("/[0]/MNAE/1/Sensor/IndoorTemperature/la", notification.from);
+    assertEquals("1/Sensor/IndoorTemperature", notification.getSubscribedItem());
+    assertFalse(notification.verification);
+  }
+
+  @Test
+  void decodesVerificationRequest() throws IOException {
+    String message = "{\"m2m:rqp\":{\"op\":5,\"rqi\":\"n8\",\"pc\":{\"m2m:sgn\":{\"vrq\":true,\"sur\":\"/[0]/MNAE/1/Sensor/sub\"}}}}";
+    AdapterNotification notification = assertInstanceOf(AdapterNotification.class, ResponseDecoder.decode(message));
+    assertTrue(notification.verification);
+    assertNull(notification.con);
+  }
+
+  @Test
+  void dropsOtherRequests() throws IOException {
+    AdapterResponse response = ResponseDecoder.decode("{\"m2m:rqp\":{\"op\":2,\"rqi\":\"q1\",\"to\":\"/S\"}}");
+    assertFalse(response instanceof AdapterNotification);
+    assertEquals(AdapterResponse.NO_RSC, response.rsc);
+    assertNull(response.rqi);
+  }
+
+}